@@ -0,0 +1,211 @@
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// solves many puzzles in one JVM on a work-stealing pool. A puzzle takes an idle
+// Solver.Search, whose frontier and closed set are cleared and reused from one
+// puzzle to the next instead of being allocated again, and gives it back when
+// solved, so there are never more of them than puzzles solved at once. They are
+// dropped on shutdown.
+//
+// The puzzles come from the files of a directory, named by their file names, or
+// from a stream of boards in the same format one after another on standard input,
+// named #1, #2 and so on. For every puzzle, in input order, one line is printed:
+//
+//     name moves nodes-expanded millis path
+//
+// where the path spells the moves of the blank with the letters L, R, U and D.
+// Unsolvable puzzles print -1 moves and the path -, and puzzles that cannot be
+// read or solved print the name, "error" and the message.
+public class BatchSolver {
+
+    // puzzles solved ahead of the one being printed, per thread
+    private static final int LOOKAHEAD = 4;
+
+    private final ForkJoinPool pool;
+    private final Heuristic heuristic;
+    private final ConcurrentLinkedQueue<Solver.Search> idleSearches =
+            new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+
+    // creates a batch solver running on the number of threads with the heuristic
+    public BatchSolver(int threads, Heuristic heuristic) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads has to be at least 1");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Heuristic is null");
+        }
+        pool = new ForkJoinPool(threads);
+        this.heuristic = heuristic;
+    }
+
+    // solves every file of the directory, in the order of the file names
+    public void solveDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException(directory + " is not a directory");
+        }
+        Arrays.sort(files);
+        for (final File file : files) {
+            if (file.isFile()) {
+                submit(file.getName(), new Callable<Board>() {
+                    public Board call() {
+                        return new Board(readTiles(new In(file)));
+                    }
+                });
+            }
+        }
+        flush();
+    }
+
+    // solves the boards of the stream one after another until it is empty; a board
+    // whose numbers cannot be read ends the stream, since the ones after it can no
+    // longer be told apart, but still gets its error line
+    public void solveStream(In in) {
+        for (int i = 1; !in.isEmpty(); i++) {
+            final int[][] tiles;
+            try {
+                tiles = readTiles(in);
+            }
+            catch (final RuntimeException e) {
+                submit("#" + i, new Callable<Board>() {
+                    public Board call() {
+                        throw e;
+                    }
+                });
+                break;
+            }
+            submit("#" + i, new Callable<Board>() {
+                public Board call() {
+                    return new Board(tiles);
+                }
+            });
+        }
+        flush();
+    }
+
+    // stops the worker threads and lets go of the search structures
+    public void shutdown() {
+        pool.shutdown();
+        idleSearches.clear();
+    }
+
+    private void submit(final String name, final Callable<Board> source) {
+        pending.add(pool.submit(new Callable<String>() {
+            public String call() {
+                try {
+                    return solve(name, source.call());
+                }
+                catch (Exception e) {
+                    String message = e.getMessage();
+                    return name + " error " + (message != null ? message : e.getClass().getName());
+                }
+            }
+        }));
+        while (pending.size() > LOOKAHEAD * pool.getParallelism()) {
+            printNext();
+        }
+    }
+
+    private void flush() {
+        while (!pending.isEmpty()) {
+            printNext();
+        }
+    }
+
+    private void printNext() {
+        try {
+            StdOut.println(pending.poll().get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a puzzle", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("puzzle failed", e.getCause());
+        }
+    }
+
+    private String solve(String name, Board board) {
+        Solver.Search search = idleSearches.poll();
+        if (search == null) {
+            search = new Solver.Search(Solver.Frontier.BUCKETS);
+        }
+        long start = System.nanoTime();
+        Solver solver;
+        try {
+            solver = new Solver(board, heuristic, search);
+        }
+        finally {
+            if (!pool.isShutdown()) {
+                idleSearches.add(search);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        StringBuilder line = new StringBuilder(name);
+        line.append(' ').append(solver.moves())
+            .append(' ').append(solver.nodesExpanded())
+            .append(' ').append(millis).append(' ');
+        if (!solver.isSolvable()) {
+            return line.append('-').toString();
+        }
+        int n = board.dimension();
+        Board previous = null;
+        for (Board next : solver.solution()) {
+            if (previous != null) {
+                int step = next.blankIndex() - previous.blankIndex();
+                line.append(step == -1 ? 'L' : step == 1 ? 'R' : step == -n ? 'U' : 'D');
+            }
+            previous = next;
+        }
+        return line.toString();
+    }
+
+    private static int[][] readTiles(In in) {
+        int n = in.readInt();
+        int[][] tiles = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                tiles[i][j] = in.readInt();
+            }
+        }
+        return tiles;
+    }
+
+    // usage: java BatchSolver (directory | -) [threads [linear | pattern-database-file]]
+    public static void main(String[] args) throws IOException {
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        Heuristic heuristic = Heuristic.MANHATTAN;
+        if (args.length > 2 && args[2].equals("linear")) {
+            heuristic = new LinearConflict();
+        }
+        else if (args.length > 2) {
+            heuristic = PatternDatabase.load(Paths.get(args[2]));
+        }
+
+        BatchSolver batch = new BatchSolver(threads, heuristic);
+        try {
+            if (args[0].equals("-")) {
+                batch.solveStream(new In());
+            }
+            else {
+                batch.solveDirectory(new File(args[0]));
+            }
+        }
+        finally {
+            batch.shutdown();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import edu.princeton.cs.algs4.Stack;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// bidirectional MM search: one search runs forward from the initial board with the
+// given heuristic, the other backward from the goal with the Manhattan distance to
+// the initial board. Both order their frontier by max(moves + estimate, 2 * moves)
+// and every step expands the side whose smallest such priority is smaller, so
+// neither side goes past the middle of an optimal path before the two have met.
+// Every board generated on one side is looked up on the other, which keeps the
+// length U of the shortest path found through a meeting board so far. A path that
+// has not been found yet leaves a frontier board on both sides, so it is no
+// shorter than the smaller of the two priorities, than the smallest moves +
+// estimate on either frontier (neither heuristic overestimates), and than the
+// smallest moves on the two frontiers plus the one move between them. The search
+// stops as soon as U is no longer than the largest of these bounds, which makes
+// the path behind U a shortest one.
+public final class BidirectionalSolver implements PuzzleSolver {
+
+    private Stack<Board> solution;
+    private int moves = 0;
+    private boolean solvable;
+    private long nodesExpanded;
+
+    // the shortest path found so far runs through forwardMeet and backwardMeet,
+    // two nodes of the same board
+    private int best = Integer.MAX_VALUE;
+    private Node forwardMeet;
+    private Node backwardMeet;
+
+    // find a solution to the initial board (using bidirectional MM search)
+    public BidirectionalSolver(Board initial) {
+        this(initial, Heuristic.MANHATTAN);
+    }
+
+    // find a solution to the initial board, guided forward by the heuristic
+    public BidirectionalSolver(Board initial, Heuristic heuristic) {
+        if (initial == null) {
+            throw new IllegalArgumentException("Board is null");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Heuristic is null");
+        }
+        if (!initial.isSolvable()) {
+            solvable = false;
+            moves = -1;
+            return;
+        }
+        solvable = true;
+        if (initial.isGoal()) {
+            solution = new Stack<>();
+            solution.push(initial);
+            return;
+        }
+
+        Side forward = new Side(initial, heuristic, null);
+        DistanceTo toInitial = new DistanceTo(initial);
+        Side backward = new Side(goal(initial.dimension()), toInitial, toInitial);
+        while (best > lowerBound(forward, backward)) {
+            int forwardPriority = forward.minPriority();
+            int backwardPriority = backward.minPriority();
+            if (forwardPriority < backwardPriority
+                    || forwardPriority == backwardPriority && forward.size() <= backward.size()) {
+                forward.expand(backward, true);
+            }
+            else {
+                backward.expand(forward, false);
+            }
+        }
+        moves = best;
+        fillSolution();
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    public int moves() {
+        return moves;
+    }
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    public Iterable<Board> solution() {
+        return solution;
+    }
+
+    // number of boards whose neighbors either search generated
+    long nodesExpanded() {
+        return nodesExpanded;
+    }
+
+    private static int lowerBound(Side forward, Side backward) {
+        if (forward.size() == 0 || backward.size() == 0) {
+            return Integer.MAX_VALUE;
+        }
+        int bound = Math.min(forward.minPriority(), backward.minPriority());
+        bound = Math.max(bound, Math.max(forward.minCost(), backward.minCost()));
+        return Math.max(bound, forward.minMoves() + backward.minMoves() + 1);
+    }
+
+    private void fillSolution() {
+        // the backward chain leads from the meeting board to the goal, so it is
+        // pushed first, the forward chain back to the initial board on top of it
+        Stack<Board> toGoal = new Stack<>();
+        for (Node node = backwardMeet.parent; node != null; node = node.parent) {
+            toGoal.push(node.board);
+        }
+        solution = new Stack<>();
+        for (Board board : toGoal) {
+            solution.push(board);
+        }
+        for (Node node = forwardMeet; node != null; node = node.parent) {
+            solution.push(node.board);
+        }
+    }
+
+    private static Board goal(int n) {
+        int[][] tiles = new int[n][n];
+        for (int i = 0; i < n * n - 1; i++) {
+            tiles[i / n][i % n] = i + 1;
+        }
+        return new Board(tiles);
+    }
+
+    // one direction of the search
+    private final class Side {
+
+        private final BucketQueue<Node> queue = new BucketQueue<>();
+        // node of the fewest moves known for every board generated on this side
+        private final Map<Board, Node> nodes = new HashMap<>();
+        private final Heuristic heuristic;
+        // the heuristic again when it can be updated from the parent, null otherwise
+        private final DistanceTo distance;
+        // frontier nodes by their moves and by their moves + estimate, superseded
+        // ones included
+        private int[] frontierMoves = new int[64];
+        private int[] frontierCosts = new int[64];
+        private int minMoves;
+        private int minCost;
+
+        private Side(Board start, Heuristic heuristic, DistanceTo distance) {
+            this.heuristic = heuristic;
+            this.distance = distance;
+            insert(new Node(null, start, 0, heuristic.estimate(start)));
+        }
+
+        private int size() {
+            return queue.size();
+        }
+
+        // smallest max(moves + estimate, 2 * moves) of the frontier
+        private int minPriority() {
+            return queue.minPriority();
+        }
+
+        // lower bound on the moves of the frontier
+        private int minMoves() {
+            while (frontierMoves[minMoves] == 0) {
+                minMoves++;
+            }
+            return minMoves;
+        }
+
+        // lower bound on the moves + estimate of the frontier
+        private int minCost() {
+            while (frontierCosts[minCost] == 0) {
+                minCost++;
+            }
+            return minCost;
+        }
+
+        private void insert(Node node) {
+            int cost = node.moves + node.estimate;
+            nodes.put(node.board, node);
+            queue.insert(Math.max(cost, 2 * node.moves), node);
+            if (cost >= frontierCosts.length) {
+                // the moves never exceed the cost, so one length fits both
+                int length = Math.max(cost + 1, frontierCosts.length * 2);
+                frontierMoves = Arrays.copyOf(frontierMoves, length);
+                frontierCosts = Arrays.copyOf(frontierCosts, length);
+            }
+            frontierMoves[node.moves]++;
+            frontierCosts[cost]++;
+            minMoves = Math.min(minMoves, node.moves);
+            minCost = Math.min(minCost, cost);
+        }
+
+        private void expand(Side other, boolean isForward) {
+            Node node = queue.delMin();
+            frontierMoves[node.moves]--;
+            frontierCosts[node.moves + node.estimate]--;
+            if (nodes.get(node.board) != node) {
+                // superseded by a shorter path to the same board
+                return;
+            }
+            nodesExpanded++;
+            int childMoves = node.moves + 1;
+            for (Board neighbor : node.board.neighbors()) {
+                Node known = nodes.get(neighbor);
+                if (known != null && known.moves <= childMoves) {
+                    continue;
+                }
+                int estimate = distance != null ? distance.estimate(node, neighbor)
+                                                : heuristic.estimate(neighbor);
+                Node child = new Node(node, neighbor, childMoves, estimate);
+                insert(child);
+
+                Node meet = other.nodes.get(neighbor);
+                if (meet != null && childMoves + meet.moves < best) {
+                    best = childMoves + meet.moves;
+                    forwardMeet = isForward ? child : meet;
+                    backwardMeet = isForward ? meet : child;
+                }
+            }
+        }
+    }
+
+    // Manhattan distance from a board to the target board
+    private static class DistanceTo implements Heuristic {
+
+        private final int n;
+        // row-major index of every tile on the target board
+        private final int[] target;
+
+        private DistanceTo(Board board) {
+            n = board.dimension();
+            target = new int[n * n];
+            for (int i = 0; i < n * n; i++) {
+                target[board.tileAt(i)] = i;
+            }
+        }
+
+        // the estimate of a neighbor of the board of the parent node, from that of the
+        // parent and the one tile that moved, the way Board keeps its manhattan()
+        private int estimate(Node parent, Board neighbor) {
+            int from = neighbor.blankIndex();
+            int to = parent.board.blankIndex();
+            int tile = neighbor.tileAt(to);
+            return parent.estimate - distance(from, target[tile]) + distance(to, target[tile]);
+        }
+
+        public int estimate(Board board) {
+            int result = 0;
+            for (int i = 0; i < n * n; i++) {
+                int tile = board.tileAt(i);
+                if (tile != 0) {
+                    result += distance(i, target[tile]);
+                }
+            }
+            return result;
+        }
+
+        private int distance(int from, int to) {
+            return Math.abs(from / n - to / n) + Math.abs(from % n - to % n);
+        }
+    }
+
+    private static class Node {
+
+        private final Node parent;
+        private final Board board;
+        private final int moves;
+        private final int estimate;
+
+        private Node(Node parent, Board board, int moves, int estimate) {
+            this.parent = parent;
+            this.board = board;
+            this.moves = moves;
+            this.estimate = estimate;
+        }
+    }
+}
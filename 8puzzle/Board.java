@@ -1,32 +1,98 @@
 import edu.princeton.cs.algs4.Queue;
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 public class Board {
 
-    private final int[][] tiles;
+    // boards up to 4-by-4 fit 4 bits per tile into a single long
+    private static final int MAX_PACKED_DIMENSION = 4;
+    // blank moves, see slide()
+    static final int DIRECTIONS = 4;
+    private static final long ZOBRIST_SEED = 0x2545f4914f6cdd1dL;
+
+    // Zobrist keys of the packed dimensions, indexed by dimension; a key per
+    // (tile, index) pair, at tile * n * n + index. Bigger boards mix their keys on
+    // the fly, as n^4 of them would not fit in memory for long.
+    private static final long[][] ZOBRIST_KEYS = new long[MAX_PACKED_DIMENSION + 1][];
+
+    static {
+        for (int n = 1; n <= MAX_PACKED_DIMENSION; n++) {
+            ZOBRIST_KEYS[n] = new long[n * n * n * n];
+            for (int i = 0; i < ZOBRIST_KEYS[n].length; i++) {
+                ZOBRIST_KEYS[n][i] = mixZobristKey(n, i);
+            }
+        }
+    }
+
+    private final int n;
+    // tiles in row-major order; null for packed boards
+    private final char[] tiles;
+    // tile at index i in bits 4i..4i+3; 0 for unpacked boards
+    private final long packed;
+    private final int blank;
     private final int hamming;
     private final int manhattan;
-
+    // XOR of the Zobrist keys of the tiles where they are
+    private final long hash;
 
     // create a board from an n-by-n array of tiles,
     // where tiles[row][col] = tile at (row, col)
     public Board(int[][] tiles) {
-        this.tiles = new int[tiles.length][tiles.length];
-        for (int i = 0; i < tiles.length; i++) {
-            System.arraycopy(tiles[i], 0, this.tiles[i], 0, tiles[i].length);
+        this(tiles.length, flatten(tiles));
+    }
+
+    private Board(int n, char[] tiles) {
+        this.n = n;
+        if (n <= MAX_PACKED_DIMENSION) {
+            long packedTiles = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                packedTiles |= (long) tiles[i] << 4 * i;
+            }
+            this.tiles = null;
+            packed = packedTiles;
+        }
+        else {
+            this.tiles = tiles;
+            packed = 0;
+        }
+        blank = findBlankIndex(tiles);
+        hamming = calculateHamming(tiles);
+        manhattan = calculateManhattan(tiles);
+        hash = calculateHash(tiles);
+    }
+
+    // the board after sliding the tile at newBlank into the blank of parent; only
+    // that tile moves, so the distances and the hash are updated from its old and
+    // new place
+    private Board(Board parent, int newBlank) {
+        n = parent.n;
+        blank = newBlank;
+        int tile = parent.tileAt(newBlank);
+        int oldBlank = parent.blank;
+        if (parent.tiles == null) {
+            tiles = null;
+            packed = parent.packed & ~(0xfL << 4 * newBlank) | (long) tile << 4 * oldBlank;
         }
-        hamming = calculateHamming();
-        manhattan = calculateManhattan();
+        else {
+            tiles = parent.tiles.clone();
+            tiles[oldBlank] = (char) tile;
+            tiles[newBlank] = 0;
+            packed = 0;
+        }
+        int goal = tile - 1;
+        hamming = parent.hamming - (newBlank != goal ? 1 : 0) + (oldBlank != goal ? 1 : 0);
+        manhattan = parent.manhattan - distance(goal, newBlank) + distance(goal, oldBlank);
+        hash = parent.hash ^ zobristKey(tile, newBlank) ^ zobristKey(tile, oldBlank);
     }
 
     // string representation of this board
     public String toString() {
         StringBuilder s = new StringBuilder();
-        s.append(tiles.length).append("\n");
-        for (int i = 0; i < tiles.length; i++) {
-            for (int j = 0; j < tiles.length; j++) {
-                s.append(String.format("%2d ", tiles[i][j]));
+        s.append(n).append("\n");
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                s.append(String.format("%2d ", tileAt(i * n + j)));
             }
             s.append("\n");
         }
@@ -35,7 +101,7 @@ public class Board {
 
     // board dimension n
     public int dimension() {
-        return tiles.length;
+        return n;
     }
 
     // number of tiles out of place
@@ -65,124 +131,211 @@ public class Board {
             return false;
         }
         Board that = (Board) y;
-        if (this.tiles.length != that.tiles.length) {
+        if (this.hash != that.hash || this.n != that.n || this.blank != that.blank) {
             return false;
         }
-        for (int i = 0; i < this.tiles.length; i++) {
-            for (int j = 0; j < this.tiles.length; j++) {
-                if (this.tiles[i][j] != that.tiles[i][j]) {
-                    return false;
-                }
+        if (tiles == null) {
+            return this.packed == that.packed;
+        }
+        return Arrays.equals(this.tiles, that.tiles);
+    }
+
+    // hash code consistent with equals
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    // can the goal be reached from this board? a slide never changes the parity of
+    // the inversions on odd boards, while on even boards a vertical slide flips it
+    // along with the row of the blank
+    public boolean isSolvable() {
+        int[] order = new int[n * n - 1];
+        int size = 0;
+        for (int i = 0; i < n * n; i++) {
+            if (i != blank) {
+                order[size++] = tileAt(i);
             }
         }
-        return true;
+        long inversions = countInversions(order, new int[size], 0, size);
+        if (n % 2 == 1) {
+            return inversions % 2 == 0;
+        }
+        return (inversions + blank / n) % 2 == 1;
     }
 
     // all neighboring boards
     public Iterable<Board> neighbors() {
-        int[] blanks = findBlankIndexes();
-        int blankI = blanks[0];
-        int blankJ = blanks[1];
         Queue<Board> neighbors = new Queue<>();
-        if (blankJ > 0) {
-            int[][] neighbor = copyTiles();
-            int tmp = neighbor[blankI][blankJ];
-            neighbor[blankI][blankJ] = neighbor[blankI][blankJ - 1];
-            neighbor[blankI][blankJ - 1] = tmp;
-            neighbors.enqueue(new Board(neighbor));
-        }
-        if (blankJ < tiles.length - 1) {
-            int[][] neighbor = copyTiles();
-            int tmp = neighbor[blankI][blankJ];
-            neighbor[blankI][blankJ] = neighbor[blankI][blankJ + 1];
-            neighbor[blankI][blankJ + 1] = tmp;
-            neighbors.enqueue(new Board(neighbor));
-        }
-        if (blankI > 0) {
-            int[][] neighbor = copyTiles();
-            int tmp = neighbor[blankI][blankJ];
-            neighbor[blankI][blankJ] = neighbor[blankI - 1][blankJ];
-            neighbor[blankI - 1][blankJ] = tmp;
-            neighbors.enqueue(new Board(neighbor));
-        }
-        if (blankI < tiles.length - 1) {
-            int[][] neighbor = copyTiles();
-            int tmp = neighbor[blankI][blankJ];
-            neighbor[blankI][blankJ] = neighbor[blankI + 1][blankJ];
-            neighbor[blankI + 1][blankJ] = tmp;
-            neighbors.enqueue(new Board(neighbor));
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            Board neighbor = slide(direction);
+            if (neighbor != null) {
+                neighbors.enqueue(neighbor);
+            }
         }
         return neighbors;
     }
 
     // a board that is obtained by exchanging any pair of tiles
     public Board twin() {
-        int[][] twinTiles = copyTiles();
-        int firstI = firstNonblankTile(twinTiles[0]);
-        int secondI = firstNonblankTile(twinTiles[1]);
-        int temp = twinTiles[0][firstI];
-        twinTiles[0][firstI] = twinTiles[1][secondI];
-        twinTiles[1][secondI] = temp;
-        return new Board(twinTiles);
+        char[] twinTiles = copyTiles();
+        int firstI = firstNonblankTile(twinTiles, 0);
+        int secondI = firstNonblankTile(twinTiles, n);
+        char temp = twinTiles[firstI];
+        twinTiles[firstI] = twinTiles[secondI];
+        twinTiles[secondI] = temp;
+        return new Board(n, twinTiles);
     }
 
-    private int calculateHamming() {
-        int result = 0;
+    // tile at the row-major index i
+    int tileAt(int i) {
+        if (tiles == null) {
+            return (int) (packed >>> 4 * i) & 0xf;
+        }
+        return tiles[i];
+    }
+
+    // row-major index of the blank
+    int blankIndex() {
+        return blank;
+    }
+
+    // the board after the blank moves left (0), right (1), up (2) or down (3), the
+    // order neighbors() lists them in; null if the blank is at that edge
+    Board slide(int direction) {
+        switch (direction) {
+            case 0:
+                return blank % n > 0 ? new Board(this, blank - 1) : null;
+            case 1:
+                return blank % n < n - 1 ? new Board(this, blank + 1) : null;
+            case 2:
+                return blank >= n ? new Board(this, blank - n) : null;
+            case 3:
+                return blank < n * n - n ? new Board(this, blank + n) : null;
+            default:
+                throw new IllegalArgumentException("direction has to be between 0 and 3");
+        }
+    }
+
+    // are the tiles packed into a single long? (true for boards up to 4-by-4)
+    boolean isPacked() {
+        return tiles == null;
+    }
+
+    // the packed tiles, which identify a packed board among boards of its dimension
+    long packedTiles() {
+        return packed;
+    }
+
+    private static char[] flatten(int[][] tiles) {
+        char[] flat = new char[tiles.length * tiles.length];
         for (int i = 0; i < tiles.length; i++) {
             for (int j = 0; j < tiles.length; j++) {
-                if (tiles[i][j] == 0) {
-                    continue;
-                }
-                int expectedValue = i * tiles.length + j + 1;
-                if (tiles[i][j] != expectedValue) {
-                    result++;
-                }
+                flat[i * tiles.length + j] = (char) tiles[i][j];
+            }
+        }
+        return flat;
+    }
+
+    private int calculateHamming(char[] flat) {
+        int result = 0;
+        for (int i = 0; i < flat.length; i++) {
+            if (flat[i] != 0 && flat[i] != i + 1) {
+                result++;
             }
         }
         return result;
     }
 
-    private int calculateManhattan() {
+    private int calculateManhattan(char[] flat) {
         int result = 0;
-        for (int i = 0; i < tiles.length; i++) {
-            for (int j = 0; j < tiles.length; j++) {
-                if (tiles[i][j] == 0) {
-                    continue;
-                }
-                int expectedRow = (tiles[i][j] - 1) / tiles.length;
-                int remainder = tiles[i][j] % tiles.length;
-                int expectedColumn = remainder == 0 ? tiles.length - 1 : remainder - 1;
-                result += Math.abs(expectedRow - i) + Math.abs(expectedColumn - j);
+        for (int i = 0; i < flat.length; i++) {
+            if (flat[i] != 0) {
+                result += distance(flat[i] - 1, i);
             }
         }
         return result;
     }
 
-    private int[] findBlankIndexes() {
-        int[] indexes = new int[2];
-        for (int i = 0; i < tiles.length; i++) {
-            for (int j = 0; j < tiles.length; j++) {
-                if (tiles[i][j] == 0) {
-                    indexes[0] = i;
-                    indexes[1] = j;
-                    return indexes;
-                }
+    // sorts a[lo, hi) with merge sort and returns the number of its inversions
+    private static long countInversions(int[] a, int[] aux, int lo, int hi) {
+        if (hi - lo < 2) {
+            return 0;
+        }
+        int mid = (lo + hi) >>> 1;
+        long inversions = countInversions(a, aux, lo, mid) + countInversions(a, aux, mid, hi);
+        System.arraycopy(a, lo, aux, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (i < mid && (j == hi || aux[i] <= aux[j])) {
+                a[k] = aux[i++];
+            }
+            else {
+                // aux[j] is smaller than everything left in the first half
+                inversions += mid - i;
+                a[k] = aux[j++];
+            }
+        }
+        return inversions;
+    }
+
+    // Manhattan distance between the row-major indexes from and to
+    private int distance(int from, int to) {
+        return Math.abs(from / n - to / n) + Math.abs(from % n - to % n);
+    }
+
+    private long calculateHash(char[] flat) {
+        long result = 0;
+        for (int i = 0; i < flat.length; i++) {
+            if (flat[i] != 0) {
+                result ^= zobristKey(flat[i], i);
+            }
+        }
+        return result;
+    }
+
+    // the Zobrist key of the tile at the index
+    private long zobristKey(int tile, int index) {
+        if (n <= MAX_PACKED_DIMENSION) {
+            return ZOBRIST_KEYS[n][tile * n * n + index];
+        }
+        return mixZobristKey(n, (long) tile * n * n + index);
+    }
+
+    // the key at the position of n-by-n tables: the splitmix64 mix of the seed,
+    // the dimension and the position, so the same on every run
+    private static long mixZobristKey(int n, long position) {
+        long z = ZOBRIST_SEED ^ (long) n << 48 ^ position;
+        z += 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private int findBlankIndex(char[] flat) {
+        for (int i = 0; i < flat.length; i++) {
+            if (flat[i] == 0) {
+                return i;
             }
         }
         throw new NoSuchElementException("Blank element not found");
     }
 
-    private int[][] copyTiles() {
-        int[][] arr = new int[tiles.length][tiles.length];
-        for (int i = 0; i < tiles.length; i++) {
-            System.arraycopy(tiles[i], 0, arr[i], 0, tiles.length);
+    private char[] copyTiles() {
+        if (tiles != null) {
+            return tiles.clone();
+        }
+        char[] arr = new char[n * n];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = (char) tileAt(i);
         }
         return arr;
     }
 
-    private int firstNonblankTile(int[] subArray) {
-        for (int i = 0; i < subArray.length; i++) {
-            if (subArray[i] != 0) {
+    // first nonblank tile of the row that starts at index start
+    private int firstNonblankTile(char[] flat, int start) {
+        for (int i = start; i < start + n; i++) {
+            if (flat[i] != 0) {
                 return i;
             }
         }
@@ -215,4 +368,4 @@ public class Board {
         Board test = new Board(new int[][] { { 0, 1, 3 }, { 4, 2, 5 }, { 7, 8, 6 } });
         System.out.println("Test: " + test.manhattan());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// min priority queue for small nonnegative integer priorities: one stack of items
+// per priority, so insert and delMin are O(1) amortized apart from skipping empty
+// buckets, and the items of equal priority come out last in, first out
+public class BucketQueue<Item> {
+
+    private static final int DEFAULT_BUCKETS = 64;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[][] buckets;
+    private int[] sizes;
+    // no bucket below min holds items
+    private int min;
+    private int size;
+
+    // creates an empty queue
+    public BucketQueue() {
+        buckets = new Object[DEFAULT_BUCKETS][];
+        sizes = new int[DEFAULT_BUCKETS];
+    }
+
+    // is the queue empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of items in the queue
+    public int size() {
+        return size;
+    }
+
+    // adds the item with the priority
+    public void insert(int priority, Item item) {
+        if (priority < 0) {
+            throw new IllegalArgumentException("priority has to be nonnegative");
+        }
+        if (priority >= buckets.length) {
+            int length = Math.max(priority + 1, buckets.length * 2);
+            buckets = Arrays.copyOf(buckets, length);
+            sizes = Arrays.copyOf(sizes, length);
+        }
+        Object[] bucket = buckets[priority];
+        if (bucket == null) {
+            bucket = new Object[DEFAULT_CAPACITY];
+            buckets[priority] = bucket;
+        }
+        else if (sizes[priority] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            buckets[priority] = bucket;
+        }
+        bucket[sizes[priority]++] = item;
+        if (size == 0 || priority < min) {
+            min = priority;
+        }
+        size++;
+    }
+
+    // smallest priority in the queue
+    public int minPriority() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Priority queue underflow");
+        }
+        skipEmptyBuckets();
+        return min;
+    }
+
+    // removes and returns the item of smallest priority inserted last
+    public Item delMin() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Priority queue underflow");
+        }
+        skipEmptyBuckets();
+        Object[] bucket = buckets[min];
+        int last = --sizes[min];
+        @SuppressWarnings("unchecked")
+        Item item = (Item) bucket[last];
+        bucket[last] = null;
+        size--;
+        return item;
+    }
+
+    // removes all the items, keeping the buckets allocated
+    public void clear() {
+        for (int priority = 0; priority < buckets.length; priority++) {
+            if (sizes[priority] > 0) {
+                Arrays.fill(buckets[priority], 0, sizes[priority], null);
+                sizes[priority] = 0;
+            }
+        }
+        size = 0;
+        min = 0;
+    }
+
+    private void skipEmptyBuckets() {
+        while (sizes[min] == 0) {
+            min++;
+        }
+    }
+}
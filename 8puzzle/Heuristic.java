@@ -0,0 +1,14 @@
+// lower bound on the number of moves from a board to the goal; the solvers only
+// find shortest solutions with heuristics that never overestimate
+public interface Heuristic {
+
+    // sum of Manhattan distances between tiles and goal, as kept by the board
+    Heuristic MANHATTAN = new Heuristic() {
+        public int estimate(Board board) {
+            return board.manhattan();
+        }
+    };
+
+    // estimated number of moves from the board to the goal
+    int estimate(Board board);
+}
@@ -0,0 +1,152 @@
+import edu.princeton.cs.algs4.Queue;
+
+// iterative-deepening A*: depth-first searches with a growing bound on
+// moves + manhattan, each one on a single mutable copy of the tiles that is moved
+// and moved back in place. Memory is O(depth), at the price of expanding the
+// boards near the root once per bound. Unsolvable boards are told apart by
+// Board.isSolvable() before any search.
+public final class IdaSolver implements PuzzleSolver {
+
+    private static final int FOUND = -1;
+
+    private final int n;
+    private final int[] tiles;
+    // distances[tile * n * n + i] = Manhattan distance of the tile at index i
+    private final int[] distances;
+    private int blank;
+    // blank index after every move of the current path
+    private int[] path;
+
+    private Queue<Board> solution;
+    private int moves = -1;
+    private boolean solvable;
+
+    // find a solution to the initial board (using the IDA* algorithm)
+    public IdaSolver(Board initial) {
+        if (initial == null) {
+            throw new IllegalArgumentException("Board is null");
+        }
+        n = initial.dimension();
+        int cells = n * n;
+        tiles = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            tiles[i] = initial.tileAt(i);
+        }
+        blank = initial.blankIndex();
+        distances = new int[cells * cells];
+        for (int tile = 1; tile < cells; tile++) {
+            for (int i = 0; i < cells; i++) {
+                int goal = tile - 1;
+                distances[tile * cells + i] = Math.abs(goal / n - i / n)
+                        + Math.abs(goal % n - i % n);
+            }
+        }
+        path = new int[16];
+
+        solvable = initial.isSolvable();
+        if (!solvable) {
+            return;
+        }
+        int bound = initial.manhattan();
+        while (true) {
+            int next = search(0, bound, initial.manhattan(), -1);
+            if (next == FOUND) {
+                break;
+            }
+            bound = next;
+        }
+        fillSolution(initial);
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    public int moves() {
+        return moves;
+    }
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    public Iterable<Board> solution() {
+        return solution;
+    }
+
+    // searches below the current board, g moves deep with manhattan h; returns FOUND,
+    // leaving the solution in path, or the smallest g + h beyond the bound
+    private int search(int g, int bound, int h, int previousBlank) {
+        int f = g + h;
+        if (f > bound) {
+            return f;
+        }
+        if (h == 0) {
+            moves = g;
+            return FOUND;
+        }
+        if (g == path.length) {
+            int[] copy = new int[path.length * 2];
+            System.arraycopy(path, 0, copy, 0, g);
+            path = copy;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int cells = n * n;
+        int oldBlank = blank;
+        // same order as Board.neighbors(): left, right, up, down
+        for (int direction = 0; direction < 4; direction++) {
+            int newBlank = neighbor(direction);
+            if (newBlank < 0 || newBlank == previousBlank) {
+                continue;
+            }
+            int tile = tiles[newBlank];
+            int childH = h - distances[tile * cells + newBlank]
+                    + distances[tile * cells + oldBlank];
+            slide(newBlank);
+            path[g] = newBlank;
+            int result = search(g + 1, bound, childH, oldBlank);
+            if (result == FOUND) {
+                return FOUND;
+            }
+            slide(oldBlank);
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    // index the blank moves to in the direction, or -1 if that is off the board
+    private int neighbor(int direction) {
+        switch (direction) {
+            case 0:
+                return blank % n > 0 ? blank - 1 : -1;
+            case 1:
+                return blank % n < n - 1 ? blank + 1 : -1;
+            case 2:
+                return blank >= n ? blank - n : -1;
+            default:
+                return blank < n * n - n ? blank + n : -1;
+        }
+    }
+
+    // slides the tile at newBlank into the blank
+    private void slide(int newBlank) {
+        tiles[blank] = tiles[newBlank];
+        tiles[newBlank] = 0;
+        blank = newBlank;
+    }
+
+    private void fillSolution(Board initial) {
+        solution = new Queue<>();
+        Board board = initial;
+        solution.enqueue(board);
+        for (int i = 0; i < moves; i++) {
+            for (Board neighbor : board.neighbors()) {
+                if (neighbor.blankIndex() == path[i]) {
+                    board = neighbor;
+                    break;
+                }
+            }
+            solution.enqueue(board);
+        }
+    }
+}
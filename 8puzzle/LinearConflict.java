@@ -0,0 +1,73 @@
+// Manhattan distance plus linear conflicts: tiles that are in their goal row but
+// in the wrong order along it cannot pass each other inside the row, so all but
+// the longest increasing run of them have to leave it and come back, which costs
+// two moves on top of the Manhattan distance. Columns count the same way, and
+// since one needs vertical moves and the other horizontal ones they add up.
+public class LinearConflict implements Heuristic {
+
+    // line and tails buffers of estimate for each thread, as one instance can serve
+    // the searches of several threads; they grow to the largest dimension seen
+    private final ThreadLocal<int[][]> scratch = new ThreadLocal<int[][]>() {
+        protected int[][] initialValue() {
+            return new int[][] { new int[0], new int[0] };
+        }
+    };
+
+    // estimated number of moves from the board to the goal
+    public int estimate(Board board) {
+        int n = board.dimension();
+        int[][] buffers = scratch.get();
+        if (buffers[0].length < n) {
+            buffers[0] = new int[n];
+            buffers[1] = new int[n];
+        }
+        // goal positions along the line of the tiles that belong to that line
+        int[] line = buffers[0];
+        int[] tails = buffers[1];
+        int conflicts = 0;
+        for (int row = 0; row < n; row++) {
+            int size = 0;
+            for (int col = 0; col < n; col++) {
+                int tile = board.tileAt(row * n + col);
+                if (tile != 0 && (tile - 1) / n == row) {
+                    line[size++] = (tile - 1) % n;
+                }
+            }
+            conflicts += size - longestIncreasing(line, size, tails);
+        }
+        for (int col = 0; col < n; col++) {
+            int size = 0;
+            for (int row = 0; row < n; row++) {
+                int tile = board.tileAt(row * n + col);
+                if (tile != 0 && (tile - 1) % n == col) {
+                    line[size++] = (tile - 1) / n;
+                }
+            }
+            conflicts += size - longestIncreasing(line, size, tails);
+        }
+        return board.manhattan() + 2 * conflicts;
+    }
+
+    // length of the longest increasing subsequence of a[0, size), by patience sorting
+    private static int longestIncreasing(int[] a, int size, int[] tails) {
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tails[mid] < a[i]) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            tails[lo] = a[i];
+            if (lo == length) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
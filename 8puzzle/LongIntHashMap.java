@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+// map from long keys to int values with open addressing and linear probing; keys
+// and values sit in two primitive arrays, so no entry is boxed or allocated
+public class LongIntHashMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // the free slot marker; the value of key 0 itself is kept aside
+    private static final long FREE = 0;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    // construct an empty map
+    public LongIntHashMap() {
+        keys = new long[DEFAULT_CAPACITY];
+        values = new int[DEFAULT_CAPACITY];
+    }
+
+    // number of keys in the map
+    public int size() {
+        return size;
+    }
+
+    // value of the key, or missing if the key is not in the map
+    public int get(long key, int missing) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : missing;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+
+    // associates the value with the key, replacing any previous value
+    public void put(long key, int value) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return;
+        }
+        if (insert(keys, values, key, value)) {
+            size++;
+            if (4 * size > 3 * keys.length) {
+                resize(keys.length * 2);
+            }
+        }
+    }
+
+    // removes all the keys, keeping the allocated capacity
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    // true if the key was not in the table yet
+    private static boolean insert(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        int[] newValues = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
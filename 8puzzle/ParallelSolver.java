@@ -0,0 +1,268 @@
+import edu.princeton.cs.algs4.Stack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// hash-distributed A* (HDA*): every board belongs to one of the worker threads by
+// its hash code, and only that worker keeps it in its frontier and closed set.
+// Children that belong to another worker are sent to its lock-free inbox, which
+// all the workers write to and only the owner reads.
+//
+// The length U of the best solution found so far is shared; nodes with
+// moves + estimate >= U are pruned, so once no node below U is left anywhere, U
+// is optimal. That is detected by counting: outstanding holds one for every
+// message sent and not yet handled, plus one for every worker that still has
+// work below U. A worker gives its one back when it runs out of such work and
+// takes it again before handling a message that arrives later, so outstanding
+// only reaches zero once nothing is left in flight or in any frontier, and it
+// stays there. A worker without work parks until a message or the end wakes it.
+public final class ParallelSolver implements PuzzleSolver {
+
+    // longest a worker without work parks before it looks again
+    private static final long PARK_NANOS = 1000000;
+
+    private final Worker[] workers;
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicInteger best = new AtomicInteger(Integer.MAX_VALUE);
+    private volatile boolean finished;
+    private Node goal;
+
+    private Stack<Board> solution;
+    private int moves = 0;
+    private boolean solvable;
+
+    // find a solution to the initial board (using hash-distributed A*)
+    public ParallelSolver(Board initial, Heuristic heuristic, int threads) {
+        if (initial == null) {
+            throw new IllegalArgumentException("Board is null");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Heuristic is null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads has to be at least 1");
+        }
+        workers = new Worker[threads];
+        if (!initial.isSolvable()) {
+            solvable = false;
+            moves = -1;
+            return;
+        }
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(heuristic);
+        }
+        outstanding.set(threads);
+        workers[owner(initial)].push(new Node(null, initial, 0, heuristic.estimate(initial)));
+        run();
+        solvable = true;
+        moves = goal.moves;
+        solution = new Stack<>();
+        for (Node node = goal; node != null; node = node.parent) {
+            solution.push(node.board);
+        }
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    public int moves() {
+        return moves;
+    }
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    public Iterable<Board> solution() {
+        return solution;
+    }
+
+    // number of boards whose neighbors the workers generated
+    long nodesExpanded() {
+        long result = 0;
+        for (Worker worker : workers) {
+            if (worker != null) {
+                result += worker.expanded;
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.length);
+        try {
+            List<Future<?>> futures = new ArrayList<>(workers.length);
+            for (Worker worker : workers) {
+                futures.add(executor.submit(worker));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+        finally {
+            finish();
+            executor.shutdownNow();
+        }
+    }
+
+    // stops the search and wakes the workers to see it
+    private void finish() {
+        finished = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    private int owner(Board board) {
+        return (board.hashCode() & Integer.MAX_VALUE) % workers.length;
+    }
+
+    private synchronized void offerGoal(Node node) {
+        if (node.moves < best.get()) {
+            goal = node;
+            best.set(node.moves);
+        }
+    }
+
+    // one partition of the boards with its frontier, closed set and inbox
+    private final class Worker implements Runnable {
+
+        private final Heuristic heuristic;
+        private final BucketQueue<Node> queue = new BucketQueue<>();
+        private final Solver.ClosedSet closed = new Solver.ClosedSet();
+        private final ConcurrentLinkedQueue<Node> inbox = new ConcurrentLinkedQueue<>();
+        // holding one of outstanding?
+        private boolean active = true;
+        private long expanded;
+        private volatile Thread thread;
+        // about to park, so a message has to wake it
+        private volatile boolean waiting;
+
+        private Worker(Heuristic heuristic) {
+            this.heuristic = heuristic;
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                while (!finished && !Thread.currentThread().isInterrupted()) {
+                    receive();
+                    if (!queue.isEmpty() && queue.minPriority() < best.get()) {
+                        expand(queue.delMin());
+                    }
+                    else if (active) {
+                        active = false;
+                        if (outstanding.decrementAndGet() == 0) {
+                            finish();
+                        }
+                    }
+                    else {
+                        park();
+                    }
+                }
+            }
+            catch (RuntimeException | Error e) {
+                finish();
+                throw e;
+            }
+        }
+
+        // waits for a message; a sender that adds one after waiting is set wakes
+        // the worker, and one that added it before is seen by the check
+        private void park() {
+            waiting = true;
+            if (inbox.isEmpty() && !finished) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waiting = false;
+        }
+
+        private void send(Node node) {
+            outstanding.incrementAndGet();
+            inbox.add(node);
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        // adds a node owned by this worker unless a path as short is known
+        private void push(Node node) {
+            if (node.moves + node.estimate < best.get() && node.moves < closed.best(node.board)) {
+                closed.record(node.board, node.moves);
+                queue.insert(node.moves + node.estimate, node);
+            }
+        }
+
+        private void receive() {
+            Node node = inbox.poll();
+            while (node != null) {
+                if (!active) {
+                    // take the token back before the message gives its one up
+                    outstanding.incrementAndGet();
+                    active = true;
+                }
+                push(node);
+                outstanding.decrementAndGet();
+                node = inbox.poll();
+            }
+        }
+
+        private void expand(Node node) {
+            if (node.moves > closed.best(node.board)) {
+                // superseded by a shorter path to the same board
+                return;
+            }
+            if (node.board.isGoal()) {
+                offerGoal(node);
+                return;
+            }
+            expanded++;
+            int childMoves = node.moves + 1;
+            for (Board neighbor : node.board.neighbors()) {
+                Worker worker = workers[owner(neighbor)];
+                if (worker == this && childMoves >= closed.best(neighbor)) {
+                    // known as close already, such as the parent of the node
+                    continue;
+                }
+                Node child = new Node(node, neighbor, childMoves, heuristic.estimate(neighbor));
+                if (worker == this) {
+                    push(child);
+                }
+                else if (child.moves + child.estimate < best.get()) {
+                    worker.send(child);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+
+        private final Node parent;
+        private final Board board;
+        private final int moves;
+        private final int estimate;
+
+        private Node(Node parent, Board board, int moves, int estimate) {
+            this.parent = parent;
+            this.board = board;
+            this.moves = moves;
+            this.estimate = estimate;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// additive disjoint pattern databases: the tiles are split into groups, and for
+// every placement of a group the database holds the fewest moves of that group's
+// tiles that bring it home, whatever the other tiles do. Moves of one group are
+// never counted in another, so the groups add up to an admissible estimate;
+// tiles in no group add their Manhattan distance.
+//
+// A placement is ranked as a k-permutation of the cells, so a group of k tiles
+// takes (n^2)! / (n^2 - k)! one-byte entries. The tables are built by a
+// breadth-first search backwards from the goal over placements and blank
+// positions, where moving a tile of the group costs one and moving any other
+// tile costs nothing.
+//
+// File layout: magic, version, dimension, number of groups, then for every group
+// its size and tiles, all as ints, followed by the entries of the groups in order.
+// Version 1 files hold the moves in one byte per entry. Version 2 files, written
+// by PatternDatabaseBuilder, hold four bits per entry: how many pairs of moves the
+// group needs beyond the Manhattan distance of its tiles (a tile's Manhattan
+// distance changes by one with every move, so the difference is even), capped at
+// 15. Loaded files are memory-mapped rather than read onto the heap.
+public final class PatternDatabase implements Heuristic {
+
+    static final int MAGIC = 0x50444231;
+    static final int BYTE_ENTRIES = 1;
+    static final int NIBBLE_ENTRIES = 2;
+    private static final int UNSEEN = 0xff;
+
+    private final int n;
+    private final int[][] groups;
+    // tiles in no group
+    private final int[] others;
+    private final ByteBuffer[] entries;
+    // four-bit entries relative to the Manhattan distance?
+    private final boolean nibbles;
+    // per thread, the cell of every tile and the cells of a group's tiles, so that
+    // estimate allocates nothing
+    private final ThreadLocal<int[][]> scratch = new ThreadLocal<int[][]>() {
+        protected int[][] initialValue() {
+            return new int[][] { new int[n * n], new int[n * n] };
+        }
+    };
+
+    private PatternDatabase(int n, int[][] groups, ByteBuffer[] entries, boolean nibbles) {
+        this.n = n;
+        this.groups = groups;
+        this.entries = entries;
+        this.nibbles = nibbles;
+        boolean[] grouped = new boolean[n * n];
+        int groupedTiles = 0;
+        for (int[] group : groups) {
+            for (int tile : group) {
+                grouped[tile] = true;
+                groupedTiles++;
+            }
+        }
+        others = new int[n * n - 1 - groupedTiles];
+        int size = 0;
+        for (int tile = 1; tile < n * n; tile++) {
+            if (!grouped[tile]) {
+                others[size++] = tile;
+            }
+        }
+    }
+
+    // builds the databases of the disjoint groups of tiles for n-by-n boards
+    public static PatternDatabase build(int n, int[][] groups) {
+        validate(n, groups);
+        ByteBuffer[] entries = new ByteBuffer[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            entries[i] = ByteBuffer.wrap(buildGroup(n, groups[i]));
+        }
+        return new PatternDatabase(n, copy(groups), entries, false);
+    }
+
+    // memory-maps the databases saved in the file
+    public static PatternDatabase load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != BYTE_ENTRIES && version != NIBBLE_ENTRIES) {
+                throw new IllegalArgumentException("File is not a pattern database");
+            }
+            boolean nibbles = version == NIBBLE_ENTRIES;
+            int n = in.readInt();
+            int[][] groups = new int[in.readInt()][];
+            long offset = 16;
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = new int[in.readInt()];
+                for (int j = 0; j < groups[i].length; j++) {
+                    groups[i][j] = in.readInt();
+                }
+                offset += 4L * (groups[i].length + 1);
+            }
+            validate(n, groups);
+
+            ByteBuffer[] entries = new ByteBuffer[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                long size = placements(n * n, groups[i].length);
+                if (nibbles) {
+                    size = (size + 1) / 2;
+                }
+                if (offset + size > channel.size()) {
+                    throw new IllegalArgumentException("Pattern database file is truncated");
+                }
+                entries[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                offset += size;
+            }
+            return new PatternDatabase(n, groups, entries, nibbles);
+        }
+    }
+
+    // writes the databases to the file, which is overwritten
+    public void save(Path file) throws IOException {
+        if (nibbles) {
+            throw new IllegalStateException("four-bit databases are written by the builder");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            writeHeader(out, BYTE_ENTRIES, n, groups);
+            for (ByteBuffer groupEntries : entries) {
+                for (int i = 0; i < groupEntries.capacity(); i++) {
+                    out.writeByte(groupEntries.get(i));
+                }
+            }
+        }
+    }
+
+    // estimated number of moves from the board to the goal
+    public int estimate(Board board) {
+        if (board.dimension() != n) {
+            throw new IllegalArgumentException("Pattern database is for " + n + "-by-" + n
+                                                       + " boards");
+        }
+        int cells = n * n;
+        int[][] buffers = scratch.get();
+        int[] position = buffers[0];
+        for (int i = 0; i < cells; i++) {
+            position[board.tileAt(i)] = i;
+        }
+        int result = 0;
+        int[] placement = buffers[1];
+        for (int i = 0; i < groups.length; i++) {
+            for (int j = 0; j < groups[i].length; j++) {
+                placement[j] = position[groups[i][j]];
+            }
+            int rank = rank(placement, groups[i].length, cells);
+            if (nibbles) {
+                int extraPairs = entries[i].get(rank >>> 1) >>> 4 * (rank & 1) & 0xf;
+                result += manhattan(n, placement, groups[i]) + 2 * extraPairs;
+            }
+            else {
+                result += entries[i].get(rank) & 0xff;
+            }
+        }
+        for (int tile : others) {
+            int goal = tile - 1;
+            int at = position[tile];
+            result += Math.abs(goal / n - at / n) + Math.abs(goal % n - at % n);
+        }
+        return result;
+    }
+
+    // the header of a database file
+    static void writeHeader(DataOutputStream out, int version, int n, int[][] groups)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeInt(n);
+        out.writeInt(groups.length);
+        for (int[] group : groups) {
+            out.writeInt(group.length);
+            for (int tile : group) {
+                out.writeInt(tile);
+            }
+        }
+    }
+
+    // Manhattan distance of the group's tiles at the cells placement[0, k)
+    static int manhattan(int n, int[] placement, int[] group) {
+        int result = 0;
+        for (int j = 0; j < group.length; j++) {
+            int goal = group[j] - 1;
+            result += Math.abs(goal / n - placement[j] / n) + Math.abs(goal % n - placement[j] % n);
+        }
+        return result;
+    }
+
+    // fewest moves of the group's tiles for every placement of them
+    private static byte[] buildGroup(int n, int[] group) {
+        int cells = n * n;
+        int k = group.length;
+        long placementsNumber = placements(cells, k);
+        if (placementsNumber * cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("group of " + k + " tiles is too large");
+        }
+        // distance of every (placement, blank) state, indexed rank * cells + blank
+        byte[] distance = new byte[(int) placementsNumber * cells];
+        Arrays.fill(distance, (byte) UNSEEN);
+
+        int[] placement = new int[k];
+        for (int j = 0; j < k; j++) {
+            placement[j] = group[j] - 1;
+        }
+        int start = rank(placement, k, cells) * cells + cells - 1;
+        distance[start] = 0;
+        IntStack current = new IntStack();
+        IntStack next = new IntStack();
+        current.push(start);
+
+        // tile of the group on every cell, or -1
+        int[] occupant = new int[cells];
+        for (int d = 0; !current.isEmpty(); d++) {
+            if (d + 1 >= UNSEEN) {
+                throw new IllegalStateException("distances do not fit in a byte");
+            }
+            // states reached for free join this layer, states one move away the next
+            while (!current.isEmpty()) {
+                int state = current.pop();
+                if ((distance[state] & 0xff) != d) {
+                    continue;
+                }
+                int rank = state / cells;
+                int blank = state % cells;
+                unrank(rank, k, cells, placement);
+                Arrays.fill(occupant, -1);
+                for (int j = 0; j < k; j++) {
+                    occupant[placement[j]] = j;
+                }
+                for (int direction = 0; direction < 4; direction++) {
+                    int cell = neighbor(n, blank, direction);
+                    if (cell < 0) {
+                        continue;
+                    }
+                    int j = occupant[cell];
+                    if (j < 0) {
+                        int reached = rank * cells + cell;
+                        if ((distance[reached] & 0xff) > d) {
+                            distance[reached] = (byte) d;
+                            current.push(reached);
+                        }
+                    }
+                    else {
+                        placement[j] = blank;
+                        int reached = rank(placement, k, cells) * cells + cell;
+                        placement[j] = cell;
+                        if ((distance[reached] & 0xff) > d + 1) {
+                            distance[reached] = (byte) (d + 1);
+                            next.push(reached);
+                        }
+                    }
+                }
+            }
+            IntStack swap = current;
+            current = next;
+            next = swap;
+        }
+
+        byte[] result = new byte[(int) placementsNumber];
+        Arrays.fill(result, (byte) UNSEEN);
+        for (int state = 0; state < distance.length; state++) {
+            int rank = state / cells;
+            if ((distance[state] & 0xff) < (result[rank] & 0xff)) {
+                result[rank] = distance[state];
+            }
+        }
+        return result;
+    }
+
+    // cell the blank moves to in the direction, or -1 if that is off the board
+    static int neighbor(int n, int blank, int direction) {
+        switch (direction) {
+            case 0:
+                return blank % n > 0 ? blank - 1 : -1;
+            case 1:
+                return blank % n < n - 1 ? blank + 1 : -1;
+            case 2:
+                return blank >= n ? blank - n : -1;
+            default:
+                return blank < n * n - n ? blank + n : -1;
+        }
+    }
+
+    // rank of the distinct cells placement[0, k) among all k-permutations of the
+    // cells: digit i is the number of cells left over below placement[i]
+    static int rank(int[] placement, int k, int cells) {
+        int rank = 0;
+        for (int i = 0; i < k; i++) {
+            int digit = placement[i];
+            for (int j = 0; j < i; j++) {
+                if (placement[j] < placement[i]) {
+                    digit--;
+                }
+            }
+            rank = rank * (cells - i) + digit;
+        }
+        return rank;
+    }
+
+    // inverse of rank
+    static void unrank(int rank, int k, int cells, int[] placement) {
+        for (int i = k - 1; i >= 0; i--) {
+            placement[i] = rank % (cells - i);
+            rank /= cells - i;
+        }
+        long used = 0;
+        for (int i = 0; i < k; i++) {
+            // the digit-th cell that is still free
+            int cell = -1;
+            for (int digit = placement[i]; digit >= 0; digit--) {
+                cell++;
+                while ((used & 1L << cell) != 0) {
+                    cell++;
+                }
+            }
+            placement[i] = cell;
+            used |= 1L << cell;
+        }
+    }
+
+    static long placements(int cells, int k) {
+        long result = 1;
+        for (int i = 0; i < k; i++) {
+            result *= cells - i;
+        }
+        return result;
+    }
+
+    static void validate(int n, int[][] groups) {
+        if (n < 2 || n > 8) {
+            throw new IllegalArgumentException("dimension has to be between 2 and 8");
+        }
+        if (groups == null) {
+            throw new IllegalArgumentException("Groups are null");
+        }
+        boolean[] grouped = new boolean[n * n];
+        for (int[] group : groups) {
+            if (group == null || group.length == 0) {
+                throw new IllegalArgumentException("groups have to be nonempty");
+            }
+            for (int tile : group) {
+                if (tile < 1 || tile >= n * n || grouped[tile]) {
+                    throw new IllegalArgumentException(
+                            "groups have to hold distinct tiles between 1 and " + (n * n - 1));
+                }
+                grouped[tile] = true;
+            }
+        }
+    }
+
+    static int[][] copy(int[][] groups) {
+        int[][] result = new int[groups.length][];
+        for (int i = 0; i < groups.length; i++) {
+            result[i] = groups[i].clone();
+        }
+        return result;
+    }
+
+    // growable stack of ints
+    private static class IntStack {
+
+        private int[] items = new int[16];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        private int pop() {
+            return items[--size];
+        }
+    }
+
+    // builds the databases and saves them; the arguments are the dimension, the
+    // file and the groups as comma-separated tiles, such as 1,2,3 4,5,6,7,8
+    public static void main(String[] args) throws IOException {
+        int n = Integer.parseInt(args[0]);
+        int[][] groups = new int[args.length - 2][];
+        for (int i = 0; i < groups.length; i++) {
+            String[] tiles = args[i + 2].split(",");
+            groups[i] = new int[tiles.length];
+            for (int j = 0; j < tiles.length; j++) {
+                groups[i][j] = Integer.parseInt(tiles[j]);
+            }
+        }
+        long start = System.currentTimeMillis();
+        build(n, groups).save(Paths.get(args[1]));
+        System.out.println("Built in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// offline tool that builds disjoint pattern databases into a version 2 file, four
+// bits per entry, for PatternDatabase.load to memory-map.
+//
+// A group is searched backwards from the goal over states (placement of the
+// group's tiles, blank cell), numbered rank * n^2 + blank. The search runs in
+// layers of the group's own moves, each kept as a bitset: the layer is first
+// closed under the free moves of other tiles, sub-layer by sub-layer, while the
+// moves of group tiles collect the next layer. Every sub-layer is split into
+// chunks of bitset words that the threads take in turn, and bits are set with
+// compare-and-set, so no locks are needed. Groups are built one after another and
+// written out as soon as they are done, so the memory needed is that of the
+// largest group: four bitsets over its states, a bitset over its placements and
+// the four-bit table.
+public final class PatternDatabaseBuilder {
+
+    // bitset words per chunk of work
+    private static final int CHUNK_WORDS = 1024;
+
+    private final int n;
+    private final int[][] groups;
+    private int threads = 1;
+    private long memoryBudget = Runtime.getRuntime().maxMemory();
+
+    // state of the group being built
+    private int[] group;
+    private AtomicLongArray seen;
+    private AtomicLongArray layer;
+    private AtomicLongArray nextSubLayer;
+    private AtomicLongArray nextLayer;
+    private AtomicLongArray placementSeen;
+    private AtomicLongArray entries;
+    // did the sub-layer being expanded reach any new state for free?
+    private volatile boolean grew;
+
+    // builder for the disjoint groups of tiles of n-by-n boards
+    public PatternDatabaseBuilder(int n, int[][] groups) {
+        PatternDatabase.validate(n, groups);
+        this.n = n;
+        this.groups = PatternDatabase.copy(groups);
+        for (int[] g : groups) {
+            if (PatternDatabase.placements(n * n, g.length) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("group of " + g.length + " tiles is too large");
+            }
+        }
+    }
+
+    // number of threads searching, 1 by default
+    public PatternDatabaseBuilder threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads has to be at least 1");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    // bytes the tables of a group may take, the maximum heap size by default
+    public PatternDatabaseBuilder memoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("memory budget has to be positive");
+        }
+        memoryBudget = bytes;
+        return this;
+    }
+
+    // bytes the tables of the largest group take
+    public long memoryNeeded() {
+        long result = 0;
+        for (int[] g : groups) {
+            long placements = PatternDatabase.placements(n * n, g.length);
+            long stateBytes = bitsetBytes(placements * n * n);
+            result = Math.max(result, 4 * stateBytes + bitsetBytes(placements)
+                    + 8 * ((placements + 15) / 16));
+        }
+        return result;
+    }
+
+    // builds the databases and writes them to the file, which is overwritten
+    public void build(Path file) throws IOException {
+        if (memoryNeeded() > memoryBudget) {
+            throw new IllegalStateException("building takes " + memoryNeeded()
+                                                    + " bytes, over the budget of "
+                                                    + memoryBudget);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            PatternDatabase.writeHeader(out, PatternDatabase.NIBBLE_ENTRIES, n, groups);
+            for (int[] g : groups) {
+                buildGroup(g, executor);
+                long placements = PatternDatabase.placements(n * n, g.length);
+                for (long i = 0; i < (placements + 1) / 2; i++) {
+                    out.writeByte((int) (entries.get((int) (i >>> 3)) >>> 8 * (i & 7)));
+                }
+                releaseGroup();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void buildGroup(int[] g, ExecutorService executor) {
+        int cells = n * n;
+        group = g;
+        long placements = PatternDatabase.placements(cells, g.length);
+        int words = (int) ((placements * cells + 63) >>> 6);
+        seen = new AtomicLongArray(words);
+        layer = new AtomicLongArray(words);
+        nextSubLayer = new AtomicLongArray(words);
+        nextLayer = new AtomicLongArray(words);
+        placementSeen = new AtomicLongArray((int) ((placements + 63) >>> 6));
+        entries = new AtomicLongArray((int) ((placements + 15) / 16));
+
+        int[] placement = new int[g.length];
+        for (int j = 0; j < g.length; j++) {
+            placement[j] = g[j] - 1;
+        }
+        long start = (long) PatternDatabase.rank(placement, g.length, cells) * cells + cells - 1;
+        setBit(seen, start);
+        setBit(layer, start);
+
+        boolean more = true;
+        for (int moves = 0; more; moves++) {
+            // expanding a sub-layer clears it, so the swapped-in bitset is empty
+            do {
+                grew = false;
+                expandInParallel(executor, moves);
+                AtomicLongArray swap = layer;
+                layer = nextSubLayer;
+                nextSubLayer = swap;
+            } while (grew);
+
+            // states reached for free at this layer do not belong to the next one
+            more = false;
+            for (int word = 0; word < words; word++) {
+                long fresh = nextLayer.get(word) & ~seen.get(word);
+                if (fresh != 0) {
+                    layer.set(word, fresh);
+                    seen.set(word, seen.get(word) | fresh);
+                    more = true;
+                }
+                nextLayer.set(word, 0);
+            }
+        }
+    }
+
+    private void releaseGroup() {
+        seen = null;
+        layer = null;
+        nextSubLayer = null;
+        nextLayer = null;
+        placementSeen = null;
+        entries = null;
+    }
+
+    private void expandInParallel(ExecutorService executor, final int moves) {
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final int chunks = (layer.length() + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    int[] placement = new int[group.length];
+                    int[] occupant = new int[n * n];
+                    for (int chunk = nextChunk.getAndIncrement(); chunk < chunks;
+                         chunk = nextChunk.getAndIncrement()) {
+                        int end = Math.min(layer.length(), (chunk + 1) * CHUNK_WORDS);
+                        for (int word = chunk * CHUNK_WORDS; word < end; word++) {
+                            long bits = layer.get(word);
+                            if (bits != 0) {
+                                layer.set(word, 0);
+                            }
+                            while (bits != 0) {
+                                long state = (long) word << 6 | Long.numberOfTrailingZeros(bits);
+                                expand(state, moves, placement, occupant);
+                                bits &= bits - 1;
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Build failed", e.getCause());
+        }
+    }
+
+    // records the placement of the state, reached with the moves, and passes its
+    // neighbours on to the next sub-layer or the next layer
+    private void expand(long state, int moves, int[] placement, int[] occupant) {
+        int cells = n * n;
+        int k = group.length;
+        int rank = (int) (state / cells);
+        int blank = (int) (state % cells);
+        PatternDatabase.unrank(rank, k, cells, placement);
+        if (setBit(placementSeen, rank)) {
+            int extraPairs = (moves - PatternDatabase.manhattan(n, placement, group)) / 2;
+            setEntry(rank, Math.min(extraPairs, 15));
+        }
+
+        Arrays.fill(occupant, -1);
+        for (int j = 0; j < k; j++) {
+            occupant[placement[j]] = j;
+        }
+        for (int direction = 0; direction < Board.DIRECTIONS; direction++) {
+            int cell = PatternDatabase.neighbor(n, blank, direction);
+            if (cell < 0) {
+                continue;
+            }
+            int j = occupant[cell];
+            if (j < 0) {
+                long reached = (long) rank * cells + cell;
+                if (setBit(seen, reached)) {
+                    setBit(nextSubLayer, reached);
+                    if (!grew) {
+                        grew = true;
+                    }
+                }
+            }
+            else {
+                placement[j] = blank;
+                long reached = (long) PatternDatabase.rank(placement, k, cells) * cells + cell;
+                placement[j] = cell;
+                if (!isSet(seen, reached)) {
+                    setBit(nextLayer, reached);
+                }
+            }
+        }
+    }
+
+    private void setEntry(int rank, int value) {
+        int word = rank >>> 4;
+        int shift = 4 * (rank & 15);
+        long old = entries.get(word);
+        while (!entries.compareAndSet(word, old, old & ~(0xfL << shift) | (long) value << shift)) {
+            old = entries.get(word);
+        }
+    }
+
+    // sets the bit; true if it was clear
+    private static boolean setBit(AtomicLongArray bits, long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old = bits.get(word);
+        while ((old & mask) == 0) {
+            if (bits.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+            old = bits.get(word);
+        }
+        return false;
+    }
+
+    private static boolean isSet(AtomicLongArray bits, long index) {
+        return (bits.get((int) (index >>> 6)) & 1L << index) != 0;
+    }
+
+    private static long bitsetBytes(long bits) {
+        return 8 * ((bits + 63) >>> 6);
+    }
+
+    // usage: java PatternDatabaseBuilder n file threads budget-megabytes groups, with
+    // the groups as comma-separated tiles, such as 1,2,3,5,6,9 4,7,8,10,11,12 13,14,15
+    public static void main(String[] args) throws IOException {
+        int n = Integer.parseInt(args[0]);
+        int[][] groups = new int[args.length - 4][];
+        for (int i = 0; i < groups.length; i++) {
+            String[] tiles = args[i + 4].split(",");
+            groups[i] = new int[tiles.length];
+            for (int j = 0; j < tiles.length; j++) {
+                groups[i][j] = Integer.parseInt(tiles[j]);
+            }
+        }
+        PatternDatabaseBuilder builder = new PatternDatabaseBuilder(n, groups)
+                .threads(Integer.parseInt(args[2]))
+                .memoryBudget(Long.parseLong(args[3]) << 20);
+        long start = System.currentTimeMillis();
+        builder.build(Paths.get(args[1]));
+        System.out.println("Built in " + (System.currentTimeMillis() - start) + " ms, "
+                                   + (builder.memoryNeeded() >> 20) + " MiB of tables");
+    }
+}
@@ -0,0 +1,13 @@
+// a strategy for solving the puzzle from an initial board; Solver runs A*,
+// IdaSolver iterative-deepening A*
+public interface PuzzleSolver {
+
+    // is the initial board solvable?
+    boolean isSolvable();
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    int moves();
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    Iterable<Board> solution();
+}
@@ -0,0 +1,81 @@
+// counters of what a Solver did, filled in when passed to its constructor. A
+// search that is given none keeps no counts and takes no timings. The counters add
+// up over every solve the same stats are passed to, and the peak frontier is the
+// largest of them, so one object can sum up a whole set of puzzles.
+public final class SearchStats {
+
+    long expanded;
+    long generated;
+    long duplicates;
+    long heuristicEvaluations;
+    int peakFrontier;
+    long checkNanos;
+    long searchNanos;
+    long solutionNanos;
+
+    // number of boards whose neighbors were generated
+    public long expanded() {
+        return expanded;
+    }
+
+    // number of neighbors generated, duplicates included
+    public long generated() {
+        return generated;
+    }
+
+    // number of neighbors dropped because their board was already reached in as
+    // few moves, plus frontier entries skipped because a shorter path superseded them
+    public long duplicates() {
+        return duplicates;
+    }
+
+    // number of times the heuristic was asked for an estimate
+    public long heuristicEvaluations() {
+        return heuristicEvaluations;
+    }
+
+    // most nodes the frontier held at once
+    public int peakFrontier() {
+        return peakFrontier;
+    }
+
+    // nanoseconds spent checking whether the board is solvable
+    public long checkNanos() {
+        return checkNanos;
+    }
+
+    // nanoseconds spent in the search proper
+    public long searchNanos() {
+        return searchNanos;
+    }
+
+    // nanoseconds spent replaying the solution from the path the search left
+    public long solutionNanos() {
+        return solutionNanos;
+    }
+
+    void frontierSize(int size) {
+        if (size > peakFrontier) {
+            peakFrontier = size;
+        }
+    }
+
+    void add(SearchStats that) {
+        expanded += that.expanded;
+        generated += that.generated;
+        duplicates += that.duplicates;
+        heuristicEvaluations += that.heuristicEvaluations;
+        frontierSize(that.peakFrontier);
+        checkNanos += that.checkNanos;
+        searchNanos += that.searchNanos;
+        solutionNanos += that.solutionNanos;
+    }
+
+    public String toString() {
+        return "expanded " + expanded + ", generated " + generated
+                + ", duplicates " + duplicates + ", heuristic evaluations " + heuristicEvaluations
+                + ", peak frontier " + peakFrontier + ", check " + checkNanos / 1000
+                + " us, search " + searchNanos / 1000 + " us, solution "
+                + solutionNanos / 1000 + " us";
+    }
+}
@@ -0,0 +1,58 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// flight recorder event committed by every Solver while a recording has it enabled,
+// for instance with
+//
+//     java -XX:StartFlightRecording:filename=solve.jfr Solver puzzle.txt
+//
+// The search only keeps its counters when the event is enabled or stats are asked
+// for, so it costs nothing otherwise.
+@Name("puzzle.Solve")
+@Label("Solve")
+@Category("Puzzle")
+@Description("One A* search of Solver with its counters")
+final class SolveEvent extends jdk.jfr.Event {
+
+    @Label("Dimension")
+    int dimension;
+
+    @Label("Frontier")
+    String frontier;
+
+    @Label("Heuristic")
+    String heuristic;
+
+    @Label("Moves")
+    int moves;
+
+    @Label("Expanded")
+    long expanded;
+
+    @Label("Generated")
+    long generated;
+
+    @Label("Duplicates")
+    long duplicates;
+
+    @Label("Heuristic Evaluations")
+    long heuristicEvaluations;
+
+    @Label("Peak Frontier")
+    int peakFrontier;
+
+    @Label("Solvability Check")
+    @Timespan(Timespan.NANOSECONDS)
+    long checkNanos;
+
+    @Label("Search")
+    @Timespan(Timespan.NANOSECONDS)
+    long searchNanos;
+
+    @Label("Solution")
+    @Timespan(Timespan.NANOSECONDS)
+    long solutionNanos;
+}
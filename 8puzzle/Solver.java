@@ -3,34 +3,112 @@ import edu.princeton.cs.algs4.MinPQ;
 import edu.princeton.cs.algs4.Stack;
 import edu.princeton.cs.algs4.StdOut;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.FlightRecorder;
 
-public final class Solver {
+public final class Solver implements PuzzleSolver {
 
     private Stack<Board> solution;
     private int moves = 0;
     private boolean solvable;
+    private long nodesExpanded;
 
     // find a solution to the initial board (using the A* algorithm)
     public Solver(Board initial) {
+        this(initial, Heuristic.MANHATTAN);
+    }
+
+    // find a solution to the initial board, guided by the heuristic
+    public Solver(Board initial, Heuristic heuristic) {
+        this(initial, heuristic, Frontier.BUCKETS);
+    }
+
+    // find a solution to the initial board, guided by the heuristic, with the
+    // given kind of priority queue for the frontier
+    public Solver(Board initial, Heuristic heuristic, Frontier frontier) {
+        this(initial, heuristic, new Search(validate(frontier)));
+    }
+
+    // find a solution to the initial board, guided by the heuristic, with the
+    // given kind of priority queue for the frontier, and add what the search did to
+    // the stats
+    public Solver(Board initial, Heuristic heuristic, Frontier frontier, SearchStats stats) {
+        this(initial, heuristic, new Search(validate(frontier)), validate(stats));
+    }
+
+    // find a solution to the initial board with search structures left over from
+    // earlier solvers, which must not be in use by any other solver at the same time
+    Solver(Board initial, Heuristic heuristic, Search search) {
+        this(initial, heuristic, search, null);
+    }
+
+    // as above, adding what the search did to the stats unless they are null
+    Solver(Board initial, Heuristic heuristic, Search search, SearchStats stats) {
         if (initial == null) {
             throw new IllegalArgumentException("Board is null");
         }
-        if (initial.isGoal()) {
-            solvable = true;
-            solution = new Stack<>();
-            solution.push(initial);
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Heuristic is null");
+        }
+        // counts of this solve alone, kept only if someone is going to look at them;
+        // the event is not even created before a flight recording has started, as
+        // loading the recorder takes longer than solving most boards
+        SolveEvent event = FlightRecorder.isInitialized() ? new SolveEvent() : null;
+        boolean recording = event != null && event.isEnabled();
+        SearchStats counts = stats != null || recording ? new SearchStats() : null;
+        if (recording) {
+            event.begin();
+        }
+
+        long start = counts != null ? System.nanoTime() : 0;
+        solvable = initial.isSolvable();
+        if (counts != null) {
+            counts.checkNanos = System.nanoTime() - start;
+        }
+        if (!solvable) {
+            moves = -1;
         }
         else {
-            MinPQ<Node> originalQueue = new MinPQ<>(new ManhattanNodeComparator());
-            originalQueue.insert(new Node(new Node(), initial, moves));
-            Board twin = initial.twin();
-            MinPQ<Node> twinQueue = new MinPQ<>(new ManhattanNodeComparator());
-            twinQueue.insert(new Node(new Node(), twin, moves));
-
-            while (!solvable && moves != -1) {
-                processQueues(originalQueue, twinQueue);
+            search.stats = counts;
+            Node goal;
+            try {
+                goal = search.run(initial, heuristic);
+            }
+            finally {
+                search.stats = null;
             }
+            moves = goal.moves;
+            nodesExpanded = search.expanded;
+            start = counts != null ? System.nanoTime() : 0;
+            fillSolution(initial, search.path(goal.index, goal.moves));
+            if (counts != null) {
+                counts.solutionNanos = System.nanoTime() - start;
+            }
+        }
+
+        if (stats != null) {
+            stats.add(counts);
+        }
+        if (recording) {
+            event.end();
+            event.dimension = initial.dimension();
+            event.frontier = search.frontier.name();
+            event.heuristic = heuristic.getClass().getName();
+            event.moves = moves;
+            event.expanded = counts.expanded;
+            event.generated = counts.generated;
+            event.duplicates = counts.duplicates;
+            event.heuristicEvaluations = counts.heuristicEvaluations;
+            event.peakFrontier = counts.peakFrontier;
+            event.checkNanos = counts.checkNanos;
+            event.searchNanos = counts.searchNanos;
+            event.solutionNanos = counts.solutionNanos;
+            event.commit();
         }
     }
 
@@ -49,74 +127,268 @@ public final class Solver {
         return solution;
     }
 
-    private void processQueues(MinPQ<Node> original, MinPQ<Node> twin) {
-        Node minOriginal = original.delMin();
-        Node minTwin = twin.delMin();
-        if (minOriginal.board.isGoal()) {
-            solvable = true;
-            fillSolution(minOriginal);
-            return;
+    // number of boards whose neighbors the search generated
+    long nodesExpanded() {
+        return nodesExpanded;
+    }
+
+    private static Frontier validate(Frontier frontier) {
+        if (frontier == null) {
+            throw new IllegalArgumentException("Frontier is null");
         }
-        else if (minTwin.board.isGoal()) {
-            solvable = false;
-            moves = -1;
-            return;
+        return frontier;
+    }
+
+    private static SearchStats validate(SearchStats stats) {
+        if (stats == null) {
+            throw new IllegalArgumentException("SearchStats is null");
+        }
+        return stats;
+    }
+
+    // replays the directions of the blank from the initial board
+    private void fillSolution(Board initial, int[] path) {
+        Board[] boards = new Board[path.length + 1];
+        boards[0] = initial;
+        for (int i = 0; i < path.length; i++) {
+            boards[i + 1] = boards[i].slide(path[i]);
+        }
+        solution = new Stack<>();
+        for (int i = boards.length - 1; i >= 0; i--) {
+            solution.push(boards[i]);
+        }
+    }
+
+    // priority queue that holds the frontier of the search
+    public enum Frontier {
+        // algs4 binary heap ordered by moves + estimate, then by estimate
+        HEAP,
+        // one bucket per moves + estimate, last in first out within a bucket
+        BUCKETS
+    }
+
+    // frontier and closed set of A*, cleared and reused from one run to the next so
+    // that solving many boards in a row does not regrow them every time.
+    //
+    // Only the frontier holds boards. Every node generated is numbered and leaves
+    // behind just the number of its parent and the direction the blank moved in,
+    // packed four to a byte, from which the solution is replayed at the end.
+    //
+    // While stats are set the search counts into them; every count is behind a
+    // null check, which costs next to nothing when they are not.
+    static final class Search {
+
+        private static final int DEFAULT_CAPACITY = 1024;
+
+        private final Frontier frontier;
+        private final FrontierQueue queue;
+        private final ClosedSet closed = new ClosedSet();
+        private int[] parents = new int[DEFAULT_CAPACITY];
+        private byte[] directions = new byte[DEFAULT_CAPACITY / 4];
+        private int nodes;
+        private long expanded;
+        private SearchStats stats;
+
+        Search(Frontier frontier) {
+            this.frontier = frontier;
+            queue = frontier == Frontier.HEAP ? new HeapFrontier() : new BucketFrontier();
         }
-        moves = minOriginal.moves + 1;
-        for (Board neighbor : minOriginal.board.neighbors()) {
-            if (!neighbor.equals(minOriginal.parent.board)) {
-                original.insert(new Node(minOriginal, neighbor, moves));
+
+        // searches from the solvable initial board and returns the goal node
+        private Node run(Board initial, Heuristic heuristic) {
+            SearchStats stats = this.stats;
+            long start = stats != null ? System.nanoTime() : 0;
+            queue.clear();
+            closed.clear();
+            nodes = 0;
+            expanded = 0;
+            closed.record(initial, 0);
+            queue.insert(new Node(initial, addNode(-1, 0), 0, heuristic.estimate(initial)));
+            if (stats != null) {
+                stats.heuristicEvaluations++;
+                stats.frontierSize(1);
+            }
+            while (true) {
+                Node node = queue.delMin();
+                // skip entries superseded by a shorter path to the same board
+                if (node.moves > closed.best(node.board)) {
+                    if (stats != null) {
+                        stats.duplicates++;
+                    }
+                    continue;
+                }
+                if (node.board.isGoal()) {
+                    if (stats != null) {
+                        stats.expanded += expanded;
+                        stats.searchNanos = System.nanoTime() - start;
+                    }
+                    return node;
+                }
+                expanded++;
+                int moves = node.moves + 1;
+                for (int direction = 0; direction < Board.DIRECTIONS; direction++) {
+                    Board neighbor = node.board.slide(direction);
+                    if (neighbor == null) {
+                        continue;
+                    }
+                    if (moves < closed.best(neighbor)) {
+                        closed.record(neighbor, moves);
+                        queue.insert(new Node(neighbor, addNode(node.index, direction), moves,
+                                              heuristic.estimate(neighbor)));
+                        if (stats != null) {
+                            stats.generated++;
+                            stats.heuristicEvaluations++;
+                        }
+                    }
+                    else if (stats != null) {
+                        stats.generated++;
+                        stats.duplicates++;
+                    }
+                }
+                if (stats != null) {
+                    stats.frontierSize(queue.size());
+                }
             }
         }
-        for (Board neighbor : minTwin.board.neighbors()) {
-            if (!neighbor.equals(minTwin.parent.board)) {
-                twin.insert(new Node(minTwin, neighbor, moves));
+
+        // numbers a new node
+        private int addNode(int parent, int direction) {
+            if (nodes == parents.length) {
+                parents = Arrays.copyOf(parents, nodes * 2);
+                directions = Arrays.copyOf(directions, nodes / 2);
             }
+            parents[nodes] = parent;
+            directions[nodes >>> 2] &= (byte) ~(3 << 2 * (nodes & 3));
+            directions[nodes >>> 2] |= (byte) (direction << 2 * (nodes & 3));
+            return nodes++;
+        }
+
+        // directions of the blank from the initial board to the node, moves deep
+        private int[] path(int node, int moves) {
+            int[] path = new int[moves];
+            for (int i = moves - 1; i >= 0; i--) {
+                path[i] = directions[node >>> 2] >>> 2 * (node & 3) & 3;
+                node = parents[node];
+            }
+            return path;
         }
     }
 
-    private void fillSolution(Node node) {
-        solution = new Stack<>();
-        while (node.board != null) {
-            solution.push(node.board);
-            node = node.parent;
+    private interface FrontierQueue {
+
+        void insert(Node node);
+
+        Node delMin();
+
+        int size();
+
+        void clear();
+    }
+
+    private static class HeapFrontier implements FrontierQueue {
+
+        private MinPQ<Node> queue = new MinPQ<>(new EstimateNodeComparator());
+
+        public void insert(Node node) {
+            queue.insert(node);
+        }
+
+        public Node delMin() {
+            return queue.delMin();
+        }
+
+        public int size() {
+            return queue.size();
+        }
+
+        public void clear() {
+            queue = new MinPQ<>(new EstimateNodeComparator());
+        }
+    }
+
+    private static class BucketFrontier implements FrontierQueue {
+
+        private final BucketQueue<Node> queue = new BucketQueue<>();
+
+        public void insert(Node node) {
+            queue.insert(node.moves + node.estimate, node);
+        }
+
+        public Node delMin() {
+            return queue.delMin();
+        }
+
+        public int size() {
+            return queue.size();
+        }
+
+        public void clear() {
+            queue.clear();
         }
     }
 
-    private class Node {
+    // fewest moves known for every board a search has generated; packed boards are
+    // keyed by their packed tiles in a primitive table, bigger ones by the board
+    static final class ClosedSet {
+
+        private final LongIntHashMap packedBoards = new LongIntHashMap();
+        private final Map<Board, Integer> boards = new HashMap<>();
 
-        private Node parent;
-        private Board board;
-        private int moves;
-        private int manhattan;
+        int best(Board board) {
+            if (board.isPacked()) {
+                return packedBoards.get(board.packedTiles(), Integer.MAX_VALUE);
+            }
+            Integer moves = boards.get(board);
+            return moves == null ? Integer.MAX_VALUE : moves;
+        }
 
-        private Node() {
+        void clear() {
+            packedBoards.clear();
+            boards.clear();
+        }
+
+        void record(Board board, int moves) {
+            if (board.isPacked()) {
+                packedBoards.put(board.packedTiles(), moves);
+            }
+            else {
+                boards.put(board, moves);
+            }
         }
+    }
+
+    // frontier entry; the path to it is kept by number in Search
+    private static class Node {
+
+        private final Board board;
+        private final int index;
+        private final int moves;
+        private final int estimate;
 
-        private Node(Node parent, Board board, int moves) {
-            this.parent = parent;
+        private Node(Board board, int index, int moves, int estimate) {
             this.board = board;
+            this.index = index;
             this.moves = moves;
-            manhattan = board.manhattan();
+            this.estimate = estimate;
         }
     }
 
-    private class ManhattanNodeComparator implements Comparator<Node> {
+    private static class EstimateNodeComparator implements Comparator<Node> {
 
         public int compare(Node o1, Node o2) {
-            int priority1 = o1.manhattan + o1.moves;
-            int priority2 = o2.manhattan + o2.moves;
+            int priority1 = o1.estimate + o1.moves;
+            int priority2 = o2.estimate + o2.moves;
             if (priority1 != priority2) {
                 return priority1 - priority2;
             }
             else {
-                return o1.manhattan - o2.manhattan;
+                return o1.estimate - o2.estimate;
             }
         }
     }
 
     // test client (see below)
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         // create initial board from file
         In in = new In(args[0]);
@@ -127,8 +399,23 @@ public final class Solver {
                 tiles[i][j] = in.readInt();
         Board initial = new Board(tiles);
 
-        // solve the puzzle
-        Solver solver = new Solver(initial);
+        // solve the puzzle, with IDA*, bidirectional A* or hash-distributed A* if the
+        // second argument is "ida", "bidirectional" or "parallel", and with linear
+        // conflicts or a pattern database file if it names either
+        PuzzleSolver solver;
+        if (args.length > 1 && args[1].equals("ida"))
+            solver = new IdaSolver(initial);
+        else if (args.length > 1 && args[1].equals("bidirectional"))
+            solver = new BidirectionalSolver(initial);
+        else if (args.length > 1 && args[1].equals("parallel"))
+            solver = new ParallelSolver(initial, Heuristic.MANHATTAN,
+                                        Runtime.getRuntime().availableProcessors());
+        else if (args.length > 1 && args[1].equals("linear"))
+            solver = new Solver(initial, new LinearConflict());
+        else if (args.length > 1)
+            solver = new Solver(initial, PatternDatabase.load(Paths.get(args[1])));
+        else
+            solver = new Solver(initial);
 
         // print solution to standard output
         if (!solver.isSolvable())
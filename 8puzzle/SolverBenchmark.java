@@ -0,0 +1,76 @@
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+// times Solver with the heap frontier against the bucket frontier on puzzle files,
+// along with the nodes each expands and generates per puzzle and its peak frontier
+public class SolverBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private final Board[] boards;
+
+    private SolverBenchmark(String[] files) {
+        boards = new Board[files.length];
+        for (int i = 0; i < files.length; i++) {
+            In in = new In(files[i]);
+            int n = in.readInt();
+            int[][] tiles = new int[n][n];
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    tiles[row][col] = in.readInt();
+                }
+            }
+            boards[i] = new Board(tiles);
+        }
+    }
+
+    private long run(Solver.Frontier frontier) {
+        long moves = 0;
+        for (Board board : boards) {
+            moves += new Solver(board, Heuristic.MANHATTAN, frontier).moves();
+        }
+        return moves;
+    }
+
+    private void report() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(Solver.Frontier.HEAP);
+            run(Solver.Frontier.BUCKETS);
+        }
+
+        long start = System.nanoTime();
+        long heapMoves = run(Solver.Frontier.HEAP);
+        double heapMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        long bucketMoves = run(Solver.Frontier.BUCKETS);
+        double bucketMillis = (System.nanoTime() - start) / 1e6;
+        if (heapMoves != bucketMoves) {
+            throw new IllegalStateException("frontiers disagree on the number of moves");
+        }
+
+        StdOut.printf("%-10s %12s %12s %12s %12s%n",
+                      "frontier", "ms/puzzle", "expanded", "generated", "peak");
+        report("MinPQ", heapMillis, count(Solver.Frontier.HEAP));
+        report("buckets", bucketMillis, count(Solver.Frontier.BUCKETS));
+    }
+
+    // counters summed over the boards, from a run apart from the timed ones
+    private SearchStats count(Solver.Frontier frontier) {
+        SearchStats stats = new SearchStats();
+        for (Board board : boards) {
+            new Solver(board, Heuristic.MANHATTAN, frontier, stats);
+        }
+        return stats;
+    }
+
+    private void report(String name, double millis, SearchStats stats) {
+        StdOut.printf("%-10s %12.3f %12d %12d %12d%n", name, millis / boards.length,
+                      stats.expanded() / boards.length, stats.generated() / boards.length,
+                      stats.peakFrontier());
+    }
+
+    // usage: java SolverBenchmark puzzle-files
+    public static void main(String[] args) {
+        new SolverBenchmark(args).report();
+    }
+}
@@ -3,17 +3,49 @@ import edu.princeton.cs.algs4.Queue;
 import edu.princeton.cs.algs4.RectHV;
 import edu.princeton.cs.algs4.StdDraw;
 
+import java.util.Arrays;
 import java.util.Collections;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 2d-tree kept in parallel arrays: node i has the point points[i] with coordinates
+// xs[i] and ys[i], and the children left[i] and right[i], or NONE. Nodes at even
+// depths split on x and at odd depths on y, and points with a smaller coordinate
+// go to the left (bottom) child, the others to the right (top) child. The
+// rectangle of a node is not stored but narrowed from the whole plane on the way
+// down, so the queries allocate nothing per node.
+//
+// Inserted points are appended in the order they come. A tree from build is
+// balanced instead, and every subtree of it lies in one run of the arrays with its
+// root in the middle, so the nodes near each other in the tree are near in memory.
 public class KdTree {
 
-    private Node root;
+    private static final int NONE = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+    // subtrees of more points are built in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    private double[] xs = new double[DEFAULT_CAPACITY];
+    private double[] ys = new double[DEFAULT_CAPACITY];
+    private Point2D[] points = new Point2D[DEFAULT_CAPACITY];
+    private int[] left = new int[DEFAULT_CAPACITY];
+    private int[] right = new int[DEFAULT_CAPACITY];
+    private int root = NONE;
     private int size;
 
     // construct an empty set of points
     public KdTree() {
     }
 
+    // a balanced set of the points, built by splitting on the median at every level;
+    // the array is left as it is
+    public static KdTree build(Point2D[] points) {
+        if (points == null) {
+            throw new IllegalArgumentException("Points are null");
+        }
+        return new Builder(points).tree();
+    }
+
     // is the set empty?
     public boolean isEmpty() {
         return size == 0;
@@ -30,7 +62,34 @@ public class KdTree {
             throw new IllegalArgumentException("Point is null");
         }
 
-        root = insert(root, point, null, -1);
+        if (root == NONE) {
+            root = add(point);
+            return;
+        }
+        double x = point.x();
+        double y = point.y();
+        int node = root;
+        boolean vertical = true;
+        while (true) {
+            if (xs[node] == x && ys[node] == y) {
+                return;
+            }
+            boolean toLeft = vertical ? x < xs[node] : y < ys[node];
+            int child = toLeft ? left[node] : right[node];
+            if (child == NONE) {
+                // add may grow the arrays, so the link is set after it
+                child = add(point);
+                if (toLeft) {
+                    left[node] = child;
+                }
+                else {
+                    right[node] = child;
+                }
+                return;
+            }
+            node = child;
+            vertical = !vertical;
+        }
     }
 
     // does the set contain point p?
@@ -39,18 +98,17 @@ public class KdTree {
             throw new IllegalArgumentException("Point is null");
         }
 
-        Node node = root;
-        while (node != null) {
-            if (node.point.equals(point)) {
+        double x = point.x();
+        double y = point.y();
+        int node = root;
+        boolean vertical = true;
+        while (node != NONE) {
+            if (xs[node] == x && ys[node] == y) {
                 return true;
             }
-            double cmp = levelCompareTo(node, point);
-            if (cmp < 0) {
-                node = node.leftBottom;
-            }
-            else {
-                node = node.rightTop;
-            }
+            boolean toLeft = vertical ? x < xs[node] : y < ys[node];
+            node = toLeft ? left[node] : right[node];
+            vertical = !vertical;
         }
 
         return false;
@@ -58,52 +116,11 @@ public class KdTree {
 
     // draw all points to standard draw
     public void draw() {
-        if (root == null) {
+        if (size == 0) {
             return;
         }
 
-        StdDraw.setPenRadius(0.01);
-
-        Node node = root;
-        Queue<Node> queue = new Queue<>();
-        queue.enqueue(node);
-        while (!queue.isEmpty()) {
-            node = queue.dequeue();
-            StdDraw.setPenColor(StdDraw.BLACK);
-            StdDraw.setPenRadius(0.01);
-            StdDraw.point(node.point.x(), node.point.y());
-            boolean vertical = node.level % 2 == 0;
-            StdDraw.setPenColor(vertical ? StdDraw.RED : StdDraw.BLUE);
-            StdDraw.setPenRadius();
-            if (node.parent != null) {
-                if (vertical) {
-                    if (node.parent.point.y() - node.point.y() < 0) {
-                        StdDraw.line(node.point.x(), node.parent.point.y(), node.point.x(), 1.0);
-                    }
-                    else {
-                        StdDraw.line(node.point.x(), node.parent.point.y(), node.point.x(), 0.0);
-                    }
-                }
-                else {
-                    if (node.parent.point.x() - node.point.x() < 0) {
-                        StdDraw.line(node.parent.point.x(), node.point.y(), 1.0, node.point.y());
-                    }
-                    else {
-                        StdDraw.line(node.parent.point.x(), node.point.y(), 0.0, node.point.y());
-                    }
-                }
-            }
-            else {
-                StdDraw.line(node.point.x(), 0.0, node.point.x(), 0.0);
-            }
-            if (node.leftBottom != null) {
-                queue.enqueue(node.leftBottom);
-            }
-            if (node.rightTop != null) {
-                queue.enqueue(node.rightTop);
-            }
-        }
-
+        drawNodes();
     }
 
     // all points that are inside the rectangle (or on the boundary)
@@ -112,23 +129,39 @@ public class KdTree {
             throw new IllegalArgumentException("Rect is null");
         }
 
-        if (root == null) {
+        if (size == 0) {
             return Collections.emptyList();
         }
 
+        // a subtree can only hold points of the rectangle if its side of the split
+        // reaches into the rectangle, which is checked against the split alone; the
+        // stack holds pairs of node and depth
         Queue<Point2D> result = new Queue<>();
-        Queue<Node> nodes = new Queue<>();
-        nodes.enqueue(root);
-        while (!nodes.isEmpty()) {
-            Node node = nodes.dequeue();
-            if (rect.contains(node.point)) {
-                result.enqueue(node.point);
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        stack[top++] = 0;
+        while (top > 0) {
+            int depth = stack[--top];
+            int node = stack[--top];
+            double x = xs[node];
+            double y = ys[node];
+            if (x >= rect.xmin() && x <= rect.xmax() && y >= rect.ymin() && y <= rect.ymax()) {
+                result.enqueue(points[node]);
+            }
+            double split = depth % 2 == 0 ? x : y;
+            double min = depth % 2 == 0 ? rect.xmin() : rect.ymin();
+            double max = depth % 2 == 0 ? rect.xmax() : rect.ymax();
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
             }
-            if (node.leftBottom != null && rect.intersects(node.leftBottom.rectangle)) {
-                nodes.enqueue(node.leftBottom);
+            if (left[node] != NONE && min < split) {
+                stack[top++] = left[node];
+                stack[top++] = depth + 1;
             }
-            if (node.rightTop != null && rect.intersects(node.rightTop.rectangle)) {
-                nodes.enqueue(node.rightTop);
+            if (right[node] != NONE && max >= split) {
+                stack[top++] = right[node];
+                stack[top++] = depth + 1;
             }
         }
         return result;
@@ -140,135 +173,476 @@ public class KdTree {
             throw new IllegalArgumentException("Point is null");
         }
 
-        if (root == null) {
+        if (size == 0) {
             return null;
         }
 
-        Pair result = new Pair(root.point, root.point.distanceSquaredTo(point));
-        result = searchNearest(root, point, result);
+        Neighbors result = new Neighbors(point.x(), point.y(), 1, Double.POSITIVE_INFINITY);
+        searchNearest(result);
+
+        return points[result.nodes[0]];
+    }
+
+    // the k points of the set nearest to p, nearest first; all of them if there
+    // are no more than k
+    public Iterable<Point2D> nearest(Point2D point, int k) {
+        if (point == null) {
+            throw new IllegalArgumentException("Point is null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
 
-        return result.point;
+        Neighbors result = new Neighbors(point.x(), point.y(), Math.min(k, size),
+                                         Double.POSITIVE_INFINITY);
+        searchNearest(result);
+        return result.sorted(points);
     }
 
-    private Node insert(Node node, Point2D point, Node parent, int parentLevel) {
-        if (node == null) {
-            size++;
-            return new Node(parent, point, parentLevel + 1);
+    // all points at distance r from p or closer, nearest first
+    public Iterable<Point2D> withinRadius(Point2D point, double r) {
+        if (point == null) {
+            throw new IllegalArgumentException("Point is null");
+        }
+        if (!(r >= 0)) {
+            throw new IllegalArgumentException("Radius is negative or NaN");
         }
 
-        if (node.point.equals(point)) {
-            return node;
+        // the bound is exclusive, so the points right at r are kept
+        Neighbors result = new Neighbors(point.x(), point.y(), Integer.MAX_VALUE,
+                                         Math.nextUp(r * r));
+        searchNearest(result);
+        return result.sorted(points);
+    }
+
+    // appends a node without children and returns its index
+    private int add(Point2D point) {
+        if (size == xs.length) {
+            int capacity = Math.max(size * 2, DEFAULT_CAPACITY);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            points = Arrays.copyOf(points, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
         }
+        xs[size] = point.x();
+        ys[size] = point.y();
+        points[size] = point;
+        left[size] = NONE;
+        right[size] = NONE;
+        return size++;
+    }
+
+    private double distanceSquared(int node, double x, double y) {
+        double dx = xs[node] - x;
+        double dy = ys[node] - y;
+        return dx * dx + dy * dy;
+    }
+
+    // squared distance from (x, y) to the rectangle [xmin, xmax] x [ymin, ymax]
+    private static double distanceSquared(double x, double y, double xmin, double ymin,
+                                          double xmax, double ymax) {
+        double dx = x < xmin ? xmin - x : x > xmax ? x - xmax : 0.0;
+        double dy = y < ymin ? ymin - y : y > ymax ? y - ymax : 0.0;
+        return dx * dx + dy * dy;
+    }
 
-        double cmp = levelCompareTo(node, point);
-        if (cmp < 0) {
-            node.leftBottom = insert(node.leftBottom, point, node, node.level);
+    // searches the tree for the nodes of the result. A subtree is skipped once its
+    // rectangle is no closer than the bound of the result, which is checked when it
+    // comes off the stack, as the bound may have shrunk since it went on; the child
+    // on the side of the point is pushed last so that it goes first, as it is the
+    // more likely to hold a closer one. The stack holds pairs of node and depth in
+    // one array and the rectangles of the nodes in the other.
+    private void searchNearest(Neighbors result) {
+        if (result.limit == 0) {
+            return;
         }
-        else {
-            node.rightTop = insert(node.rightTop, point, node, node.level);
+
+        int[] stack = new int[64];
+        double[] rects = new double[128];
+        int top = 0;
+        top = push(stack, rects, top, root, 0, Double.NEGATIVE_INFINITY,
+                   Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        while (top > 0) {
+            top -= 2;
+            int node = stack[top];
+            int depth = stack[top + 1];
+            double xmin = rects[2 * top];
+            double ymin = rects[2 * top + 1];
+            double xmax = rects[2 * top + 2];
+            double ymax = rects[2 * top + 3];
+            if (distanceSquared(result.x, result.y, xmin, ymin, xmax, ymax) >= result.bound) {
+                continue;
+            }
+            double distance = distanceSquared(node, result.x, result.y);
+            if (distance < result.bound) {
+                result.offer(node, distance);
+            }
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                rects = Arrays.copyOf(rects, rects.length * 2);
+            }
+            if (depth % 2 == 0) {
+                double split = xs[node];
+                if (result.x < split) {
+                    top = push(stack, rects, top, right[node], depth + 1, split, ymin, xmax, ymax);
+                    top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, split, ymax);
+                }
+                else {
+                    top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, split, ymax);
+                    top = push(stack, rects, top, right[node], depth + 1, split, ymin, xmax, ymax);
+                }
+            }
+            else {
+                double split = ys[node];
+                if (result.y < split) {
+                    top = push(stack, rects, top, right[node], depth + 1, xmin, split, xmax, ymax);
+                    top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, xmax, split);
+                }
+                else {
+                    top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, xmax, split);
+                    top = push(stack, rects, top, right[node], depth + 1, xmin, split, xmax, ymax);
+                }
+            }
         }
-        return node;
     }
 
-    private double levelCompareTo(Node node, Point2D point) {
-        if (node.level % 2 == 0) {
-            return point.x() - node.point.x();
+    // draws the point of every node and its split across the rectangle of the node,
+    // walking the tree with a stack laid out as in searchNearest
+    private void drawNodes() {
+        int[] stack = new int[64];
+        double[] rects = new double[128];
+        int top = 0;
+        top = push(stack, rects, top, root, 0, 0.0, 0.0, 1.0, 1.0);
+        while (top > 0) {
+            top -= 2;
+            int node = stack[top];
+            int depth = stack[top + 1];
+            double xmin = rects[2 * top];
+            double ymin = rects[2 * top + 1];
+            double xmax = rects[2 * top + 2];
+            double ymax = rects[2 * top + 3];
+            double x = xs[node];
+            double y = ys[node];
+            StdDraw.setPenColor(StdDraw.BLACK);
+            StdDraw.setPenRadius(0.01);
+            StdDraw.point(x, y);
+            StdDraw.setPenColor(depth % 2 == 0 ? StdDraw.RED : StdDraw.BLUE);
+            StdDraw.setPenRadius();
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                rects = Arrays.copyOf(rects, rects.length * 2);
+            }
+            if (depth % 2 == 0) {
+                StdDraw.line(x, ymin, x, ymax);
+                top = push(stack, rects, top, right[node], depth + 1, x, ymin, xmax, ymax);
+                top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, x, ymax);
+            }
+            else {
+                StdDraw.line(xmin, y, xmax, y);
+                top = push(stack, rects, top, right[node], depth + 1, xmin, y, xmax, ymax);
+                top = push(stack, rects, top, left[node], depth + 1, xmin, ymin, xmax, y);
+            }
         }
-        else {
-            return point.y() - node.point.y();
+    }
+
+    // pushes the node with its depth and rectangle unless it is NONE, and returns the
+    // new top; the stack has room for it
+    private static int push(int[] stack, double[] rects, int top, int node, int depth,
+                            double xmin, double ymin, double xmax, double ymax) {
+        if (node == NONE) {
+            return top;
         }
+        stack[top] = node;
+        stack[top + 1] = depth;
+        rects[2 * top] = xmin;
+        rects[2 * top + 1] = ymin;
+        rects[2 * top + 2] = xmax;
+        rects[2 * top + 3] = ymax;
+        return top + 2;
     }
 
-    private Pair searchNearest(Node node, Point2D point, Pair pair) {
-        double distance = node.point.distanceSquaredTo(point);
-        if (distance < pair.distance) {
-            pair.distance = distance;
-            pair.point = node.point;
-        }
-        boolean leftBottomPossible = node.leftBottom != null
-                && node.leftBottom.rectangle.distanceSquaredTo(point) < pair.distance;
-        boolean rightTopPossible = node.rightTop != null
-                && node.rightTop.rectangle.distanceSquaredTo(point) < pair.distance;
-        if (leftBottomPossible && rightTopPossible) {
-            if (node.level % 2 == 0 && point.x() < node.point.x()
-                    || node.level % 2 != 0 && point.y() < node.point.y()) {
-                pair = searchNearest(node.leftBottom, point, pair);
-                if (node.rightTop.rectangle.distanceSquaredTo(point) < pair.distance) {
-                    pair = searchNearest(node.rightTop, point, pair);
+    // builds a balanced tree bottom-up from the medians. Equal points are dropped
+    // through a hash table on the coordinates first. The coordinates are then
+    // partitioned in place together with the index of every point in the input, and
+    // the points are put in node order only at the end, so that the partitioning
+    // moves primitives alone.
+    private static class Builder {
+        private final Point2D[] input;
+        private final double[] xs;
+        private final double[] ys;
+        private final int[] ids;
+        private final int[] left;
+        private final int[] right;
+        private int size;
+
+        public Builder(Point2D[] input) {
+            this.input = input;
+            int n = input.length;
+            xs = new double[n];
+            ys = new double[n];
+            ids = new int[n];
+            left = new int[n];
+            right = new int[n];
+
+            // table of node + 1 by coordinates, 0 for empty, at most 3/4 full
+            int[] table = new int[Integer.highestOneBit(Math.max(n + n / 3, 1)) * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < n; i++) {
+                if (input[i] == null) {
+                    throw new IllegalArgumentException("Point is null");
                 }
-            }
-            else if (node.level % 2 == 0 && point.x() >= node.point.x()
-                    || node.level % 2 != 0 && point.y() >= node.point.y()) {
-                pair = searchNearest(node.rightTop, point, pair);
-                if (node.leftBottom.rectangle.distanceSquaredTo(point) < pair.distance) {
-                    pair = searchNearest(node.leftBottom, point, pair);
+                double x = input[i].x();
+                double y = input[i].y();
+                int slot = hash(x, y) & mask;
+                boolean duplicate = false;
+                while (table[slot] != 0 && !duplicate) {
+                    int node = table[slot] - 1;
+                    duplicate = xs[node] == x && ys[node] == y;
+                    slot = (slot + 1) & mask;
+                }
+                if (!duplicate) {
+                    xs[size] = x;
+                    ys[size] = y;
+                    ids[size] = i;
+                    table[slot] = ++size;
                 }
             }
         }
-        else if (leftBottomPossible) {
-            pair = searchNearest(node.leftBottom, point, pair);
+
+        private KdTree tree() {
+            KdTree tree = new KdTree();
+            if (size > PARALLEL_THRESHOLD) {
+                tree.root = ForkJoinPool.commonPool().invoke(new BuildTask(this, 0, size, true));
+            }
+            else {
+                tree.root = build(0, size, true);
+            }
+            tree.xs = xs;
+            tree.ys = ys;
+            tree.left = left;
+            tree.right = right;
+            tree.points = new Point2D[xs.length];
+            for (int i = 0; i < size; i++) {
+                tree.points[i] = input[ids[i]];
+            }
+            tree.size = size;
+            return tree;
         }
-        else if (rightTopPossible) {
-            pair = searchNearest(node.rightTop, point, pair);
+
+        // spreads the bits of the coordinates, in which equal points agree
+        private static int hash(double x, double y) {
+            long h = Double.doubleToLongBits(x) * 31 + Double.doubleToLongBits(y);
+            h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+            h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return (int) (h ^ (h >>> 33));
         }
 
-        return pair;
-    }
+        // builds the subtree of the points in [lo, hi) and returns its root: the
+        // median on the coordinate of the level, moved left past the points of the
+        // same coordinate so that all of them end up on the right
+        private int build(int lo, int hi, boolean vertical) {
+            if (lo >= hi) {
+                return NONE;
+            }
+            double[] keys = vertical ? xs : ys;
+            int median = (lo + hi) >>> 1;
+            select(keys, lo, hi - 1, median);
+            double split = keys[median];
+            for (int i = median - 1; i >= lo; i--) {
+                if (keys[i] == split) {
+                    swap(i, --median);
+                }
+            }
 
-    private static class Node {
-        private final Node parent;
-        private final Point2D point;
-        private final int level;
-        private RectHV rectangle;
-        private Node leftBottom;
-        private Node rightTop;
-
-        public Node(Node parent, Point2D point, int level) {
-            this.parent = parent;
-            this.point = point;
-            this.level = level;
-            initRectangle();
-        }
-
-        private void initRectangle() {
-            if (parent != null) {
-                boolean vertical = parent.level % 2 == 0;
-                if (vertical) {
-                    if (parent.point.x() <= point.x()) {
-                        rectangle = new RectHV(parent.point.x(), parent.rectangle.ymin(),
-                                               parent.rectangle.xmax(),
-                                               parent.rectangle.ymax());
-                    }
-                    else {
-                        rectangle = new RectHV(parent.rectangle.xmin(), parent.rectangle.ymin(),
-                                               parent.point.x(), parent.rectangle.ymax());
-                    }
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                BuildTask leftTask = new BuildTask(this, lo, median, !vertical);
+                leftTask.fork();
+                right[median] = build(median + 1, hi, !vertical);
+                left[median] = leftTask.join();
+            }
+            else {
+                left[median] = build(lo, median, !vertical);
+                right[median] = build(median + 1, hi, !vertical);
+            }
+            return median;
+        }
+
+        // rearranges [lo, hi] so that the kth smallest key is at k, with no bigger
+        // key before it and no smaller one after it
+        private void select(double[] keys, int lo, int hi, int k) {
+            while (hi > lo) {
+                int j = partition(keys, lo, hi);
+                if (j < k) {
+                    lo = j + 1;
+                }
+                else if (j > k) {
+                    hi = j - 1;
                 }
                 else {
-                    if (parent.point.y() <= point.y()) {
-                        rectangle = new RectHV(parent.rectangle.xmin(), parent.point.y(),
-                                               parent.rectangle.xmax(),
-                                               parent.rectangle.ymax());
+                    return;
+                }
+            }
+        }
+
+        // partitions [lo, hi] around the median of its first, middle and last keys
+        // and returns where that ends up
+        private int partition(double[] keys, int lo, int hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo]) {
+                swap(mid, lo);
+            }
+            if (keys[hi] < keys[lo]) {
+                swap(hi, lo);
+            }
+            if (keys[hi] < keys[mid]) {
+                swap(hi, mid);
+            }
+            swap(lo, mid);
+            double pivot = keys[lo];
+            int i = lo;
+            int j = hi + 1;
+            while (true) {
+                while (keys[++i] < pivot) {
+                    if (i == hi) {
+                        break;
                     }
-                    else {
-                        rectangle = new RectHV(parent.rectangle.xmin(), parent.rectangle.ymin(),
-                                               parent.rectangle.xmax(), parent.point.y());
+                }
+                while (pivot < keys[--j]) {
+                    if (j == lo) {
+                        break;
                     }
                 }
+                if (i >= j) {
+                    break;
+                }
+                swap(i, j);
             }
-            else {
-                rectangle = new RectHV(0.0, 0.0, 1.0, 1.0);
-            }
+            swap(lo, j);
+            return j;
+        }
+
+        private void swap(int i, int j) {
+            double x = xs[i];
+            xs[i] = xs[j];
+            xs[j] = x;
+            double y = ys[i];
+            ys[i] = ys[j];
+            ys[j] = y;
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+
+    // builds a subtree on another thread of the pool
+    private static class BuildTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Builder builder;
+        private final int lo;
+        private final int hi;
+        private final boolean vertical;
+
+        public BuildTask(Builder builder, int lo, int hi, boolean vertical) {
+            this.builder = builder;
+            this.lo = lo;
+            this.hi = hi;
+            this.vertical = vertical;
+        }
+
+        protected Integer compute() {
+            return builder.build(lo, hi, vertical);
         }
     }
 
-    private static class Pair {
-        private Point2D point;
-        private double distance;
+    // query point and the nodes nearest to it found so far, at most limit of them
+    // and all closer than the initial bound, kept as a max-heap on the squared
+    // distance in the parallel arrays nodes and distances. Once the heap is full its
+    // root bounds the search, and at the end the heap is sorted in place.
+    private static class Neighbors {
+        private final double x;
+        private final double y;
+        private final int limit;
+        // squared distance a node has to be below to get in
+        private double bound;
+        private int[] nodes;
+        private double[] distances;
+        private int count;
+
+        public Neighbors(double x, double y, int limit, double initialBound) {
+            this.x = x;
+            this.y = y;
+            this.limit = limit;
+            this.bound = initialBound;
+            int capacity = Math.min(limit, DEFAULT_CAPACITY);
+            nodes = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        // adds the node, below the bound, dropping the farthest one if full
+        private void offer(int node, double distance) {
+            if (count == limit) {
+                nodes[0] = node;
+                distances[0] = distance;
+                sink(0, count);
+                bound = distances[0];
+                return;
+            }
+            if (count == nodes.length) {
+                int capacity = (int) Math.min((long) count * 2, limit);
+                nodes = Arrays.copyOf(nodes, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+            }
+            int i = count++;
+            while (i > 0 && distances[(i - 1) / 2] < distance) {
+                nodes[i] = nodes[(i - 1) / 2];
+                distances[i] = distances[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+            if (count == limit) {
+                bound = distances[0];
+            }
+        }
+
+        // moves the entry at i down the heap of the first n entries
+        private void sink(int i, int n) {
+            int node = nodes[i];
+            double distance = distances[i];
+            while (2 * i + 1 < n) {
+                int child = 2 * i + 1;
+                if (child + 1 < n && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
 
-        public Pair(Point2D point, double distance) {
-            this.point = point;
-            this.distance = distance;
+        // the points of the heap, nearest first
+        private Iterable<Point2D> sorted(Point2D[] points) {
+            for (int end = count - 1; end > 0; end--) {
+                int node = nodes[end];
+                double distance = distances[end];
+                nodes[end] = nodes[0];
+                distances[end] = distances[0];
+                nodes[0] = node;
+                distances[0] = distance;
+                sink(0, end);
+            }
+            Point2D[] result = new Point2D[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = points[nodes[i]];
+            }
+            return Arrays.asList(result);
         }
     }
 
@@ -276,4 +650,4 @@ public class KdTree {
     public static void main(String[] args) {
         // not needed
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,8 @@ import edu.princeton.cs.algs4.SET;
 import edu.princeton.cs.algs4.StdDraw;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public class PointSET {
@@ -89,6 +91,51 @@ public class PointSET {
         return minDistancePoint;
     }
 
+    // the k points of the set nearest to p, nearest first; all of them if there
+    // are no more than k
+    public Iterable<Point2D> nearest(Point2D thatPoint, int k) {
+        if (thatPoint == null) {
+            throw new IllegalArgumentException("Point is null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k is negative");
+        }
+
+        List<Point2D> result = byDistanceTo(thatPoint, Double.POSITIVE_INFINITY);
+        return result.subList(0, Math.min(k, result.size()));
+    }
+
+    // all points at distance r from p or closer, nearest first
+    public Iterable<Point2D> withinRadius(Point2D thatPoint, double r) {
+        if (thatPoint == null) {
+            throw new IllegalArgumentException("Point is null");
+        }
+        if (!(r >= 0)) {
+            throw new IllegalArgumentException("Radius is negative or NaN");
+        }
+
+        return byDistanceTo(thatPoint, r * r);
+    }
+
+    // the points no farther than the squared distance from the point, nearest first
+    private List<Point2D> byDistanceTo(final Point2D thatPoint, double maxDistance) {
+        List<Point2D> result = new ArrayList<>();
+
+        for (Point2D point : points) {
+            if (point.distanceSquaredTo(thatPoint) <= maxDistance) {
+                result.add(point);
+            }
+        }
+
+        Collections.sort(result, new Comparator<Point2D>() {
+            public int compare(Point2D o1, Point2D o2) {
+                return Double.compare(o1.distanceSquaredTo(thatPoint),
+                                      o2.distanceSquaredTo(thatPoint));
+            }
+        });
+        return result;
+    }
+
     // unit testing of the methods (optional)
     public static void main(String[] args) {
         // not needed
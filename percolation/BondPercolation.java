@@ -0,0 +1,140 @@
+// bond percolation on a lattice: every site is present, the bonds between
+// neighbouring sites start closed and are opened one at a time; the system
+// percolates once the open bonds join a top-layer site to a bottom-layer site.
+//
+// The bond from site p to its i-th neighbour q > p (in the order the lattice lists
+// them) has the index p * maxDegree + i; the index API below works on those.
+public class BondPercolation {
+
+    private static final int TOP = 1;
+    private static final int BOTTOM = 2;
+
+    private final UnionFind data;
+    private final Lattice lattice;
+    private final int sitesNumber;
+    private final int maxDegree;
+    private final int[] neighbors;
+    private final long[] open;
+    private int openBonds;
+    private boolean percolates;
+
+    // creates the lattice, with all bonds initially closed
+    public BondPercolation(Lattice lattice) {
+        if (lattice == null) {
+            throw new IllegalArgumentException("Lattice is null");
+        }
+        if ((long) lattice.layers() * lattice.layerSize() * lattice.maxDegree()
+                > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("lattice has too many bonds");
+        }
+
+        this.lattice = lattice;
+        sitesNumber = lattice.layers() * lattice.layerSize();
+        maxDegree = lattice.maxDegree();
+        neighbors = new int[maxDegree];
+        open = new long[(sitesNumber * maxDegree + 63) >>> 6];
+        data = new PathHalvingUnionFind(sitesNumber);
+
+        int layerSize = lattice.layerSize();
+        for (int site = 0; site < layerSize; site++) {
+            data.mark(site, TOP);
+        }
+        for (int site = sitesNumber - layerSize; site < sitesNumber; site++) {
+            data.mark(site, BOTTOM);
+            updatePercolates(site);
+        }
+    }
+
+    // opens the bond between the neighbouring sites p and q if it is not open already
+    public void openBond(int p, int q) {
+        validate(p);
+        validate(q);
+        int site = Math.min(p, q);
+        int other = Math.max(p, q);
+        int count = lattice.neighbors(site, neighbors);
+        for (int i = 0; i < count; i++) {
+            if (neighbors[i] == other) {
+                openBondIndex(site * maxDegree + i);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("sites " + p + " and " + q + " are not neighbours");
+    }
+
+    // is the site connected to the top layer through open bonds?
+    public boolean isFull(int site) {
+        validate(site);
+        return (data.flags(data.find(site)) & TOP) != 0;
+    }
+
+    // returns the number of open bonds
+    public int numberOfOpenBonds() {
+        return openBonds;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // indexes of all the bonds of the lattice, in increasing order
+    static int[] bonds(Lattice lattice) {
+        int sitesNumber = lattice.layers() * lattice.layerSize();
+        int maxDegree = lattice.maxDegree();
+        int[] neighbors = new int[maxDegree];
+        // every bond adds two to the sum of the degrees
+        int[] bonds = new int[(int) ((long) sitesNumber * maxDegree / 2)];
+        int size = 0;
+        for (int site = 0; site < sitesNumber; site++) {
+            int count = lattice.neighbors(site, neighbors);
+            for (int i = 0; i < count; i++) {
+                if (neighbors[i] > site) {
+                    bonds[size++] = site * maxDegree + i;
+                }
+            }
+        }
+        int[] result = new int[size];
+        System.arraycopy(bonds, 0, result, 0, size);
+        return result;
+    }
+
+    // opens the bond with the given index, which is not validated
+    void openBondIndex(int bond) {
+        if ((open[bond >>> 6] & 1L << bond) != 0) {
+            return;
+        }
+        open[bond >>> 6] |= 1L << bond;
+        openBonds++;
+
+        int site = bond / maxDegree;
+        lattice.neighbors(site, neighbors);
+        int siteRoot = data.find(site);
+        int adjacentRoot = data.find(neighbors[bond - site * maxDegree]);
+        if (siteRoot != adjacentRoot) {
+            updatePercolates(data.link(siteRoot, adjacentRoot));
+        }
+    }
+
+    // cluster the site belongs to, named by one of its sites; the site is not validated
+    int rootIndex(int site) {
+        return data.find(site);
+    }
+
+    private void updatePercolates(int root) {
+        if (data.flags(root) == (TOP | BOTTOM)) {
+            percolates = true;
+        }
+    }
+
+    private void validate(int site) {
+        if (site < 0 || site >= sitesNumber) {
+            throw new IllegalArgumentException(
+                    "site has to be between 0 and " + (sitesNumber - 1) + " inclusively");
+        }
+    }
+
+    // test client (optional)
+    public static void main(String[] args) {
+        // not needed
+    }
+}
@@ -0,0 +1,122 @@
+// simple cubic lattice of layers-by-width-by-depth sites with 6-neighbour adjacency;
+// each layer is a width-by-depth plane, and a periodic lattice wraps every plane
+// around in both of its directions
+public class CubicLattice implements Lattice {
+
+    private final int layers;
+    private final int width;
+    private final int depth;
+    private final boolean periodicWidth;
+    private final boolean periodicDepth;
+
+    // creates layers-by-width-by-depth lattice, with or without wrap-around in the planes
+    public CubicLattice(int layers, int width, int depth, boolean periodic) {
+        if (layers <= 0 || width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException(
+                    "layers, width and depth have to be greater than 0");
+        }
+        if ((long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("layer has more than " + Integer.MAX_VALUE
+                                                       + " sites");
+        }
+
+        this.layers = layers;
+        this.width = width;
+        this.depth = depth;
+        // with fewer than three sites in a direction the wrapped neighbour is already adjacent
+        periodicWidth = periodic && width > 2;
+        periodicDepth = periodic && depth > 2;
+    }
+
+    public int layers() {
+        return layers;
+    }
+
+    public int layerSize() {
+        return width * depth;
+    }
+
+    public int maxDegree() {
+        return 6;
+    }
+
+    public int neighbors(int site, int[] neighbors) {
+        int layerSize = width * depth;
+        int layer = site / layerSize;
+        int position = site - layer * layerSize;
+        int y = position / width;
+        int x = position - y * width;
+        int count = 0;
+        if (layer + 1 < layers) {
+            neighbors[count++] = site + layerSize;
+        }
+        if (layer > 0) {
+            neighbors[count++] = site - layerSize;
+        }
+        if (x + 1 < width) {
+            neighbors[count++] = site + 1;
+        }
+        else if (periodicWidth) {
+            neighbors[count++] = site - x;
+        }
+        if (x > 0) {
+            neighbors[count++] = site - 1;
+        }
+        else if (periodicWidth) {
+            neighbors[count++] = site + width - 1;
+        }
+        if (y + 1 < depth) {
+            neighbors[count++] = site + width;
+        }
+        else if (periodicDepth) {
+            neighbors[count++] = site - y * width;
+        }
+        if (y > 0) {
+            neighbors[count++] = site - width;
+        }
+        else if (periodicDepth) {
+            neighbors[count++] = site + (depth - 1) * width;
+        }
+        return count;
+    }
+
+    public int neighbors(long site, long[] neighbors) {
+        int layerSize = width * depth;
+        long layer = site / layerSize;
+        int position = (int) (site - layer * layerSize);
+        int y = position / width;
+        int x = position - y * width;
+        int count = 0;
+        if (layer + 1 < layers) {
+            neighbors[count++] = site + layerSize;
+        }
+        if (layer > 0) {
+            neighbors[count++] = site - layerSize;
+        }
+        if (x + 1 < width) {
+            neighbors[count++] = site + 1;
+        }
+        else if (periodicWidth) {
+            neighbors[count++] = site - x;
+        }
+        if (x > 0) {
+            neighbors[count++] = site - 1;
+        }
+        else if (periodicWidth) {
+            neighbors[count++] = site + width - 1;
+        }
+        if (y + 1 < depth) {
+            neighbors[count++] = site + width;
+        }
+        else if (periodicDepth) {
+            neighbors[count++] = site - y * width;
+        }
+        if (y > 0) {
+            neighbors[count++] = site - width;
+        }
+        else if (periodicDepth) {
+            neighbors[count++] = site + (depth - 1) * width;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,508 @@
+import java.util.Arrays;
+
+// fully dynamic connectivity over the elements 0..size()-1 after Holm, de Lichtenberg
+// and Thorup: edges come and go in any order at O(log^2 n) amortized each, and
+// connected() is O(log n). Every edge has a level, at most log2(n), that only goes
+// up. Forest i spans the edges of level i or more, and forest 0 the whole graph.
+// When a tree edge of level l is removed, the smaller half of its tree in forest i,
+// for i from l down to 0, has its tree edges of level i moved up a level and its
+// non-tree edges of level i searched for one that joins the halves again; the ones
+// that do not are moved up as well. A half of forest i has at most n / 2^i
+// elements, which bounds the levels, and every move up is paid for once.
+//
+// The trees of all the forests are Euler tours kept in treaps with parent links,
+// in shared arrays: one node per element, made the first time an edge of the level
+// reaches it, and one per direction of every tree edge. Every node carries the
+// flags of its subtree, so the elements with non-tree edges of the level and the
+// tree edges of exactly the level are found from the root in O(log n).
+//
+// Like the union-find engines, an element can carry a few bit flags, and a set,
+// here a connected component, has the flags of all its elements.
+public class DynamicConnectivity {
+
+    private static final int NONE = -1;
+    // an element node with non-tree edges of its forest's level
+    private static final byte NON_TREE = 1;
+    // the node of one direction of a tree edge whose level is its forest's
+    private static final byte LEVEL_TREE = 2;
+    // the flags of the elements sit above those two in the nodes of forest 0
+    private static final int FLAGS_SHIFT = 2;
+    private static final int MAX_FLAGS = 0x7;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int size;
+
+    // treap nodes: the element of an element node, ~edge for an edge direction
+    private int[] owner = new int[DEFAULT_CAPACITY];
+    private int[] left = new int[DEFAULT_CAPACITY];
+    private int[] right = new int[DEFAULT_CAPACITY];
+    private int[] parent = new int[DEFAULT_CAPACITY];
+    private int[] priority = new int[DEFAULT_CAPACITY];
+    // nodes and element nodes in the subtree
+    private int[] count = new int[DEFAULT_CAPACITY];
+    private int[] elements = new int[DEFAULT_CAPACITY];
+    // flags of the node itself and of its whole subtree
+    private byte[] own = new byte[DEFAULT_CAPACITY];
+    private byte[] all = new byte[DEFAULT_CAPACITY];
+    private int nodesNumber;
+    // freed edge direction nodes, linked through right
+    private int freeNodes = NONE;
+    private int seed = 0x2545f491;
+
+    // per level, made when first used: the node of every element in the forest and
+    // the first of its non-tree half-edges of the level
+    private final int[][] elementNodes;
+    private final int[][] firstHalves;
+
+    // edges: ends, level, and for a tree edge its two direction nodes in every
+    // forest up to its level; half-edge 2e is edge e at p, 2e + 1 at q, and the
+    // non-tree half-edges of an element and level form a doubly linked list
+    private int[] edgeP = new int[DEFAULT_CAPACITY];
+    private int[] edgeQ = new int[DEFAULT_CAPACITY];
+    private int[] edgeLevel = new int[DEFAULT_CAPACITY];
+    private int[][] edgeNodes = new int[DEFAULT_CAPACITY][];
+    private int[] nextHalf = new int[2 * DEFAULT_CAPACITY];
+    private int[] previousHalf = new int[2 * DEFAULT_CAPACITY];
+    private int edgesNumber;
+    // removed edges, linked through edgeQ
+    private int freeEdges = NONE;
+
+    // results of split
+    private int splitLeft;
+    private int splitRight;
+
+    // creates size elements without edges
+    public DynamicConnectivity(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size has to be non-negative");
+        }
+
+        this.size = size;
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+        elementNodes = new int[levels][];
+        firstHalves = new int[levels][];
+    }
+
+    // number of elements
+    public int size() {
+        return size;
+    }
+
+    // is there a path between p and q?
+    public boolean connected(int p, int q) {
+        validate(p);
+        validate(q);
+        if (p == q) {
+            return true;
+        }
+        if (elementNodes[0] == null) {
+            return false;
+        }
+        int nodeP = elementNodes[0][p];
+        int nodeQ = elementNodes[0][q];
+        return nodeP != NONE && nodeQ != NONE && root(nodeP) == root(nodeQ);
+    }
+
+    // flags of all the elements connected to p
+    public int flags(int p) {
+        validate(p);
+        if (elementNodes[0] == null || elementNodes[0][p] == NONE) {
+            return 0;
+        }
+        return all[root(elementNodes[0][p])] >>> FLAGS_SHIFT;
+    }
+
+    // adds flags to the element p
+    public void mark(int p, int flags) {
+        validate(p);
+        if (flags < 0 || flags > MAX_FLAGS) {
+            throw new IllegalArgumentException("flags have to be between 0 and " + MAX_FLAGS);
+        }
+        setFlag(elementNode(0, p), (byte) (flags << FLAGS_SHIFT), true);
+    }
+
+    // adds an edge between the different elements p and q and returns its id,
+    // which stays valid until the edge is removed
+    public int addEdge(int p, int q) {
+        validate(p);
+        validate(q);
+        if (p == q) {
+            throw new IllegalArgumentException("an edge needs two different elements");
+        }
+
+        int edge = newEdge(p, q);
+        if (connected(p, q)) {
+            addNonTree(edge);
+        }
+        else {
+            link(edge, 0);
+        }
+        return edge;
+    }
+
+    // removes the edge with the id addEdge returned
+    public void removeEdge(int edge) {
+        if (edge < 0 || edge >= edgesNumber || edgeP[edge] == NONE) {
+            throw new IllegalArgumentException("no edge " + edge);
+        }
+
+        if (edgeNodes[edge] == null) {
+            removeNonTree(edge);
+        }
+        else {
+            int level = edgeLevel[edge];
+            for (int i = 0; i <= level; i++) {
+                cut(edge, i);
+            }
+            edgeNodes[edge] = null;
+            for (int i = level; i >= 0; i--) {
+                if (reconnect(edgeP[edge], edgeQ[edge], i)) {
+                    break;
+                }
+            }
+        }
+        edgeP[edge] = NONE;
+        edgeQ[edge] = freeEdges;
+        freeEdges = edge;
+    }
+
+    // looks in forest i for an edge of level i that joins the trees of p and q
+    // again, after the tree edge between them was cut; the smaller tree pays for
+    // the search by moving its edges of level i up a level
+    private boolean reconnect(int p, int q, int level) {
+        int rootP = root(elementNodes[level][p]);
+        int rootQ = root(elementNodes[level][q]);
+        int smaller = elements[rootP] <= elements[rootQ] ? rootP : rootQ;
+
+        // forest i is not changed on the way, so smaller stays its root
+        while ((all[smaller] & LEVEL_TREE) != 0) {
+            int node = find(smaller, LEVEL_TREE);
+            int edge = ~owner[node];
+            setFlag(node, LEVEL_TREE, false);
+            edgeLevel[edge] = level + 1;
+            link(edge, level + 1);
+        }
+        while ((all[smaller] & NON_TREE) != 0) {
+            int element = owner[find(smaller, NON_TREE)];
+            while (firstHalves[level][element] != NONE) {
+                int half = firstHalves[level][element];
+                int edge = half >>> 1;
+                int other = (half & 1) == 0 ? edgeQ[edge] : edgeP[edge];
+                removeNonTree(edge);
+                if (root(elementNodes[level][other]) != smaller) {
+                    for (int i = 0; i <= level; i++) {
+                        link(edge, i);
+                    }
+                    return true;
+                }
+                edgeLevel[edge] = level + 1;
+                addNonTree(edge);
+            }
+        }
+        return false;
+    }
+
+    // joins the trees of the ends of the edge in forest i: both tours are rotated to
+    // start at their end, and the tour of p, p to q, the tour of q and q to p follow
+    // one another
+    private void link(int edge, int level) {
+        int p = edgeP[edge];
+        int q = edgeQ[edge];
+        int[] nodes = edgeNodes[edge];
+        if (nodes == null || nodes.length < 2 * (level + 1)) {
+            nodes = nodes == null ? new int[2 * (level + 1)]
+                                  : Arrays.copyOf(nodes, 2 * (level + 1));
+            edgeNodes[edge] = nodes;
+        }
+        int forward = newNode(~edge);
+        int backward = newNode(~edge);
+        nodes[2 * level] = forward;
+        nodes[2 * level + 1] = backward;
+        if (level == edgeLevel[edge]) {
+            setFlag(forward, LEVEL_TREE, true);
+        }
+        int tourP = reroot(elementNode(level, p));
+        int tourQ = reroot(elementNode(level, q));
+        int tour = merge(merge(tourP, forward), merge(tourQ, backward));
+        parent[tour] = NONE;
+    }
+
+    // removes the edge from forest i: the tour between its two directions is the
+    // tree on one side, and what is left around them the tree on the other
+    private void cut(int edge, int level) {
+        int first = edgeNodes[edge][2 * level];
+        int second = edgeNodes[edge][2 * level + 1];
+        int tour = root(first);
+        int firstIndex = index(first);
+        int secondIndex = index(second);
+        if (firstIndex > secondIndex) {
+            int swap = firstIndex;
+            firstIndex = secondIndex;
+            secondIndex = swap;
+        }
+        split(tour, firstIndex);
+        int before = splitLeft;
+        split(splitRight, 1);
+        split(splitRight, secondIndex - firstIndex - 1);
+        int between = splitLeft;
+        split(splitRight, 1);
+        int after = splitRight;
+        parent[between] = NONE;
+        int rest = merge(before, after);
+        if (rest != NONE) {
+            parent[rest] = NONE;
+        }
+        freeNode(first);
+        freeNode(second);
+    }
+
+    // rotates the tour of the node to start at it and returns its root
+    private int reroot(int node) {
+        int tour = root(node);
+        split(tour, index(node));
+        int rotated = merge(splitRight, splitLeft);
+        parent[rotated] = NONE;
+        return rotated;
+    }
+
+    private void addNonTree(int edge) {
+        int level = edgeLevel[edge];
+        if (firstHalves[level] == null) {
+            firstHalves[level] = newLevelArray();
+        }
+        addHalf(level, 2 * edge, edgeP[edge]);
+        addHalf(level, 2 * edge + 1, edgeQ[edge]);
+    }
+
+    private void removeNonTree(int edge) {
+        int level = edgeLevel[edge];
+        removeHalf(level, 2 * edge, edgeP[edge]);
+        removeHalf(level, 2 * edge + 1, edgeQ[edge]);
+    }
+
+    private void addHalf(int level, int half, int element) {
+        int first = firstHalves[level][element];
+        if (first == NONE) {
+            setFlag(elementNode(level, element), NON_TREE, true);
+        }
+        else {
+            previousHalf[first] = half;
+        }
+        nextHalf[half] = first;
+        previousHalf[half] = NONE;
+        firstHalves[level][element] = half;
+    }
+
+    private void removeHalf(int level, int half, int element) {
+        int next = nextHalf[half];
+        int previous = previousHalf[half];
+        if (next != NONE) {
+            previousHalf[next] = previous;
+        }
+        if (previous != NONE) {
+            nextHalf[previous] = next;
+        }
+        else {
+            firstHalves[level][element] = next;
+            if (next == NONE) {
+                setFlag(elementNodes[level][element], NON_TREE, false);
+            }
+        }
+    }
+
+    private int newEdge(int p, int q) {
+        int edge;
+        if (freeEdges != NONE) {
+            edge = freeEdges;
+            freeEdges = edgeQ[edge];
+        }
+        else {
+            if (edgesNumber == edgeP.length) {
+                int capacity = 2 * edgesNumber;
+                edgeP = Arrays.copyOf(edgeP, capacity);
+                edgeQ = Arrays.copyOf(edgeQ, capacity);
+                edgeLevel = Arrays.copyOf(edgeLevel, capacity);
+                edgeNodes = Arrays.copyOf(edgeNodes, capacity);
+                nextHalf = Arrays.copyOf(nextHalf, 2 * capacity);
+                previousHalf = Arrays.copyOf(previousHalf, 2 * capacity);
+            }
+            edge = edgesNumber++;
+        }
+        edgeP[edge] = p;
+        edgeQ[edge] = q;
+        edgeLevel[edge] = 0;
+        return edge;
+    }
+
+    // node of the element in forest i, made on first use
+    private int elementNode(int level, int element) {
+        if (elementNodes[level] == null) {
+            elementNodes[level] = newLevelArray();
+        }
+        int node = elementNodes[level][element];
+        if (node == NONE) {
+            node = newNode(element);
+            elementNodes[level][element] = node;
+        }
+        return node;
+    }
+
+    private int[] newLevelArray() {
+        int[] array = new int[size];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+
+    private int newNode(int nodeOwner) {
+        int node;
+        if (freeNodes != NONE) {
+            node = freeNodes;
+            freeNodes = right[node];
+        }
+        else {
+            if (nodesNumber == owner.length) {
+                int capacity = 2 * nodesNumber;
+                owner = Arrays.copyOf(owner, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                priority = Arrays.copyOf(priority, capacity);
+                count = Arrays.copyOf(count, capacity);
+                elements = Arrays.copyOf(elements, capacity);
+                own = Arrays.copyOf(own, capacity);
+                all = Arrays.copyOf(all, capacity);
+            }
+            node = nodesNumber++;
+        }
+        // xorshift
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        owner[node] = nodeOwner;
+        left[node] = NONE;
+        right[node] = NONE;
+        parent[node] = NONE;
+        priority[node] = seed;
+        own[node] = 0;
+        update(node);
+        return node;
+    }
+
+    private void freeNode(int node) {
+        right[node] = freeNodes;
+        freeNodes = node;
+    }
+
+    private void setFlag(int node, byte flag, boolean on) {
+        own[node] = (byte) (on ? own[node] | flag : own[node] & ~flag);
+        for (int x = node; x != NONE; x = parent[x]) {
+            all[x] = (byte) (own[x] | flagsOf(left[x]) | flagsOf(right[x]));
+        }
+    }
+
+    // a node of the subtree with the flag, which one of them has
+    private int find(int node, byte flag) {
+        while ((own[node] & flag) == 0) {
+            node = left[node] != NONE && (all[left[node]] & flag) != 0 ? left[node]
+                                                                         : right[node];
+        }
+        return node;
+    }
+
+    private int root(int node) {
+        while (parent[node] != NONE) {
+            node = parent[node];
+        }
+        return node;
+    }
+
+    // position of the node in its tour
+    private int index(int node) {
+        int result = countOf(left[node]);
+        for (int x = node; parent[x] != NONE; x = parent[x]) {
+            if (right[parent[x]] == x) {
+                result += countOf(left[parent[x]]) + 1;
+            }
+        }
+        return result;
+    }
+
+    // splits the treap into its first k nodes, splitLeft, and the rest, splitRight,
+    // both without a parent
+    private void split(int node, int k) {
+        splitTree(node, k);
+        if (splitLeft != NONE) {
+            parent[splitLeft] = NONE;
+        }
+        if (splitRight != NONE) {
+            parent[splitRight] = NONE;
+        }
+    }
+
+    private void splitTree(int node, int k) {
+        if (node == NONE) {
+            splitLeft = NONE;
+            splitRight = NONE;
+            return;
+        }
+        if (countOf(left[node]) >= k) {
+            splitTree(left[node], k);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+        }
+        else {
+            splitTree(right[node], k - countOf(left[node]) - 1);
+            right[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        }
+    }
+
+    // concatenates two treaps; the parent of the result is left to the caller
+    private int merge(int first, int second) {
+        if (first == NONE) {
+            return second;
+        }
+        if (second == NONE) {
+            return first;
+        }
+        if (priority[first] > priority[second]) {
+            right[first] = merge(right[first], second);
+            update(first);
+            return first;
+        }
+        left[second] = merge(first, left[second]);
+        update(second);
+        return second;
+    }
+
+    private void update(int node) {
+        int l = left[node];
+        int r = right[node];
+        count[node] = 1 + countOf(l) + countOf(r);
+        elements[node] = (owner[node] >= 0 ? 1 : 0) + (l != NONE ? elements[l] : 0)
+                + (r != NONE ? elements[r] : 0);
+        all[node] = (byte) (own[node] | flagsOf(l) | flagsOf(r));
+        if (l != NONE) {
+            parent[l] = node;
+        }
+        if (r != NONE) {
+            parent[r] = node;
+        }
+    }
+
+    private int countOf(int node) {
+        return node != NONE ? count[node] : 0;
+    }
+
+    private int flagsOf(int node) {
+        return node != NONE ? all[node] : 0;
+    }
+
+    private void validate(int p) {
+        if (p < 0 || p >= size) {
+            throw new IllegalArgumentException("element has to be between 0 and " + (size - 1));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+
+// percolation on a lattice where sites can be closed again as well as opened.
+//
+// The open sites and the bonds between them are kept in a DynamicConnectivity
+// graph, together with a virtual top element joined to the open sites of the first
+// layer. The sites of the last layer are marked instead of joined to a virtual
+// bottom, which would let fullness flow back up through it, and the system
+// percolates when the component of the top carries the mark. Opening or closing a
+// site adds or removes its bonds, at most maxDegree() + 1 of them, so an update is
+// O(log^2 n) amortized, and isFull() is a single connectivity query, O(log n).
+//
+// Every open or close is one event, and the system after the first t events is
+// called time t; whether it percolates is worked out after every event, so
+// percolates() is O(1) and percolatesAfter(t) answers for any earlier time. Those
+// answers are kept for the whole history, one bit per event, so that is the one
+// part of the memory that grows with the number of events rather than with the
+// lattice.
+public class DynamicPercolation {
+
+    private static final int NONE = -1;
+    private static final int BOTTOM = 1;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final Lattice lattice;
+    private final int layerSize;
+    private final int sitesNumber;
+    private final int maxDegree;
+    private final long[] open;
+    private int openSites;
+    private int eventsNumber;
+    // bit t tells whether the system percolated at time t
+    private long[] percolatesAt;
+
+    private final DynamicConnectivity graph;
+    private final int top;
+    // edge of every bond of every open site, in the order lattice.neighbors() lists
+    // them, then the edge to the top; NONE where there is none
+    private final int[] siteEdges;
+    private final int[] neighbors;
+    private final int[] adjacentNeighbors;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public DynamicPercolation(int n) {
+        this(new GridLattice(n, n, false));
+    }
+
+    // creates the lattice, with all sites initially blocked; (row, col) then stands
+    // for position col of layer row
+    public DynamicPercolation(Lattice lattice) {
+        sitesNumber = Percolation.getSitesNumber(lattice);
+        if ((long) sitesNumber * (lattice.maxDegree() + 1) > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("lattice has too many bonds");
+        }
+
+        this.lattice = lattice;
+        layerSize = lattice.layerSize();
+        maxDegree = lattice.maxDegree();
+        open = new long[(sitesNumber + 63) >>> 6];
+        percolatesAt = new long[DEFAULT_CAPACITY];
+        graph = new DynamicConnectivity(sitesNumber + 1);
+        top = sitesNumber;
+        for (int site = sitesNumber - layerSize; site < sitesNumber; site++) {
+            graph.mark(site, BOTTOM);
+        }
+        siteEdges = new int[sitesNumber * (maxDegree + 1)];
+        Arrays.fill(siteEdges, NONE);
+        neighbors = new int[maxDegree];
+        adjacentNeighbors = new int[maxDegree];
+    }
+
+    // opens the site (row, col); an event even if the site is open already
+    public void open(int row, int col) {
+        validate(row, col);
+        int site = getIndex(row, col);
+        if (!isOpenIndex(site)) {
+            open[site >>> 6] |= 1L << site;
+            openSites++;
+            addBonds(site);
+        }
+        addEvent();
+    }
+
+    // closes the site (row, col); an event even if the site is blocked already
+    public void close(int row, int col) {
+        validate(row, col);
+        int site = getIndex(row, col);
+        if (isOpenIndex(site)) {
+            open[site >>> 6] &= ~(1L << site);
+            openSites--;
+            removeBonds(site);
+        }
+        addEvent();
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        validate(row, col);
+        return isOpenIndex(getIndex(row, col));
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        validate(row, col);
+        int site = getIndex(row, col);
+        return isOpenIndex(site) && graph.connected(site, top);
+    }
+
+    // returns the number of open sites
+    public int numberOfOpenSites() {
+        return openSites;
+    }
+
+    // number of opens and closes so far
+    public int events() {
+        return eventsNumber;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolatesAfter(eventsNumber);
+    }
+
+    // did the system percolate right after the first t events?
+    public boolean percolatesAfter(int t) {
+        if (t < 0 || t > eventsNumber) {
+            throw new IllegalArgumentException("t has to be between 0 and " + eventsNumber);
+        }
+        return (percolatesAt[t >>> 6] & 1L << t) != 0;
+    }
+
+    private void addEvent() {
+        eventsNumber++;
+        if (eventsNumber >>> 6 == percolatesAt.length) {
+            percolatesAt = Arrays.copyOf(percolatesAt, 2 * percolatesAt.length);
+        }
+        if ((graph.flags(top) & BOTTOM) != 0) {
+            percolatesAt[eventsNumber >>> 6] |= 1L << eventsNumber;
+        }
+    }
+
+    // joins the newly opened site to its open neighbours, and to the top from the
+    // first layer
+    private void addBonds(int site) {
+        int edges = site * (maxDegree + 1);
+        int count = lattice.neighbors(site, neighbors);
+        for (int i = 0; i < count; i++) {
+            int adjacentSite = neighbors[i];
+            if (isOpenIndex(adjacentSite)) {
+                int edge = graph.addEdge(site, adjacentSite);
+                siteEdges[edges + i] = edge;
+                siteEdges[bondIndex(adjacentSite, site)] = edge;
+            }
+        }
+        if (site < layerSize) {
+            siteEdges[edges + maxDegree] = graph.addEdge(site, top);
+        }
+    }
+
+    // removes every edge of the newly closed site
+    private void removeBonds(int site) {
+        int edges = site * (maxDegree + 1);
+        int count = lattice.neighbors(site, neighbors);
+        for (int i = 0; i < count; i++) {
+            int edge = siteEdges[edges + i];
+            if (edge != NONE) {
+                graph.removeEdge(edge);
+                siteEdges[edges + i] = NONE;
+                siteEdges[bondIndex(neighbors[i], site)] = NONE;
+            }
+        }
+        if (siteEdges[edges + maxDegree] != NONE) {
+            graph.removeEdge(siteEdges[edges + maxDegree]);
+            siteEdges[edges + maxDegree] = NONE;
+        }
+    }
+
+    // index in siteEdges of the bond from site to its neighbour adjacentSite
+    private int bondIndex(int site, int adjacentSite) {
+        int count = lattice.neighbors(site, adjacentNeighbors);
+        int i = 0;
+        while (i < count && adjacentNeighbors[i] != adjacentSite) {
+            i++;
+        }
+        return site * (maxDegree + 1) + i;
+    }
+
+    private boolean isOpenIndex(int site) {
+        return (open[site >>> 6] & 1L << site) != 0;
+    }
+
+    private int getIndex(int row, int col) {
+        return (row - 1) * layerSize + (col - 1);
+    }
+
+    private void validate(int row, int col) {
+        if (row < 1 || row > lattice.layers() || col < 1 || col > layerSize) {
+            throw new IllegalArgumentException(
+                    "row has to be between 1 and " + lattice.layers() + " and col between 1 and "
+                            + layerSize + " inclusively");
+        }
+    }
+
+    // test client (optional)
+    public static void main(String[] args) {
+        // not needed
+    }
+}
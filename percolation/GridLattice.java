@@ -0,0 +1,82 @@
+// rows-by-cols square lattice with 4-neighbour adjacency; the rows are the layers,
+// and a periodic lattice wraps every row around, joining its first and last columns
+public class GridLattice implements Lattice {
+
+    private final int rows;
+    private final int cols;
+    private final boolean periodic;
+
+    // creates rows-by-cols lattice, with or without wrap-around in every row
+    public GridLattice(int rows, int cols, boolean periodic) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("rows and cols have to be greater than 0");
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        // with fewer than three columns the wrapped neighbour is already adjacent
+        this.periodic = periodic && cols > 2;
+    }
+
+    public int layers() {
+        return rows;
+    }
+
+    public int layerSize() {
+        return cols;
+    }
+
+    public int maxDegree() {
+        return 4;
+    }
+
+    public int neighbors(int site, int[] neighbors) {
+        int row = site / cols;
+        int col = site - row * cols;
+        int count = 0;
+        if (row + 1 < rows) {
+            neighbors[count++] = site + cols;
+        }
+        if (row > 0) {
+            neighbors[count++] = site - cols;
+        }
+        if (col + 1 < cols) {
+            neighbors[count++] = site + 1;
+        }
+        else if (periodic) {
+            neighbors[count++] = site - col;
+        }
+        if (col > 0) {
+            neighbors[count++] = site - 1;
+        }
+        else if (periodic) {
+            neighbors[count++] = site + cols - 1;
+        }
+        return count;
+    }
+
+    public int neighbors(long site, long[] neighbors) {
+        long row = site / cols;
+        long col = site - row * cols;
+        int count = 0;
+        if (row + 1 < rows) {
+            neighbors[count++] = site + cols;
+        }
+        if (row > 0) {
+            neighbors[count++] = site - cols;
+        }
+        if (col + 1 < cols) {
+            neighbors[count++] = site + 1;
+        }
+        else if (periodic) {
+            neighbors[count++] = site - col;
+        }
+        if (col > 0) {
+            neighbors[count++] = site - 1;
+        }
+        else if (periodic) {
+            neighbors[count++] = site + cols - 1;
+        }
+        return count;
+    }
+}
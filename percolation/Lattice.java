@@ -0,0 +1,23 @@
+// sites of a percolation system, stacked in layers along the direction of the
+// flow: the first layer is the top, the last layer is the bottom, and the site
+// at position p of layer l has the flat index l * layerSize() + p. The heap engines
+// index sites by int and reject lattices of more than Integer.MAX_VALUE sites; only
+// MappedPercolation goes past that, through the long form of neighbors
+public interface Lattice {
+
+    // number of layers between the top and the bottom
+    int layers();
+
+    // number of sites in every layer
+    int layerSize();
+
+    // upper bound on the number of neighbours of any site
+    int maxDegree();
+
+    // writes the distinct neighbours of site into neighbors, which holds at least
+    // maxDegree() elements, and returns how many there are
+    int neighbors(int site, int[] neighbors);
+
+    // neighbors for a site index that may not fit an int
+    int neighbors(long site, long[] neighbors);
+}
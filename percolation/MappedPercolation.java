@@ -0,0 +1,272 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Percolation whose whole state lives in a memory-mapped file instead of on the
+// heap, for lattices too big for it; the file can be checkpointed and a run can be
+// resumed from it after a crash. Sites are long indexes all the way down, so the
+// lattice may have more than Integer.MAX_VALUE sites, a 50k-by-50k grid included.
+//
+// File layout: a 64-byte header (magic, version, layers, layer size, max degree,
+// percolates, clean, open sites), the open-site bitset, then the MappedUnionFind
+// arrays. The header is marked dirty before the first change after a checkpoint;
+// resuming a dirty file rebuilds the union-find from the bitset, which repairs an
+// open that was cut short, so none of the opens have to be redone by the caller.
+public class MappedPercolation implements Closeable {
+
+    private static final int TOP = 1;
+    private static final int BOTTOM = 2;
+    private static final int MAGIC = 0x50455243;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int LAYERS_OFFSET = 8;
+    private static final int LAYER_SIZE_OFFSET = 12;
+    private static final int MAX_DEGREE_OFFSET = 16;
+    private static final int PERCOLATES_OFFSET = 20;
+    private static final int CLEAN_OFFSET = 21;
+    private static final int OPEN_SITES_OFFSET = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] openMappings;
+    private final LongBuffer[] open;
+    private final long openWords;
+    private final MappedUnionFind data;
+    private final Lattice lattice;
+    private final int layerSize;
+    private final long bottomLayerStart;
+    private final long[] neighbors;
+    private long openSites;
+    private boolean percolates;
+    private boolean dirty;
+
+    private MappedPercolation(Lattice lattice, FileChannel channel, MappedByteBuffer header,
+                              long sitesNumber, boolean initialize) throws IOException {
+        this.lattice = lattice;
+        this.channel = channel;
+        this.header = header;
+        openWords = (sitesNumber + 63) >>> 6;
+        openMappings = MappedUnionFind.map(channel, HEADER_BYTES, 8 * openWords);
+        open = MappedUnionFind.longBuffers(openMappings);
+        data = new MappedUnionFind(channel, HEADER_BYTES + 8 * openWords, sitesNumber,
+                                   initialize);
+        layerSize = lattice.layerSize();
+        bottomLayerStart = sitesNumber - layerSize;
+        neighbors = new long[lattice.maxDegree()];
+    }
+
+    // creates the lattice in the file, which is overwritten, with all sites blocked
+    public static MappedPercolation create(Path file, Lattice lattice) throws IOException {
+        long sitesNumber = getSitesNumber(lattice);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                                  HEADER_BYTES);
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(LAYERS_OFFSET, lattice.layers());
+            header.putInt(LAYER_SIZE_OFFSET, lattice.layerSize());
+            header.putInt(MAX_DEGREE_OFFSET, lattice.maxDegree());
+            MappedPercolation percolation = new MappedPercolation(lattice, channel, header,
+                                                                  sitesNumber, true);
+            percolation.checkpoint();
+            return percolation;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // reopens the lattice saved in the file, which has to be the same lattice the
+    // file was created with
+    public static MappedPercolation resume(Path file, Lattice lattice) throws IOException {
+        long sitesNumber = getSitesNumber(lattice);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException("File is not a percolation checkpoint");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                                  HEADER_BYTES);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IllegalArgumentException("File is not a percolation checkpoint");
+            }
+            if (header.getInt(LAYERS_OFFSET) != lattice.layers()
+                    || header.getInt(LAYER_SIZE_OFFSET) != lattice.layerSize()
+                    || header.getInt(MAX_DEGREE_OFFSET) != lattice.maxDegree()) {
+                throw new IllegalArgumentException("File holds a different lattice");
+            }
+
+            boolean clean = header.get(CLEAN_OFFSET) != 0;
+            MappedPercolation percolation = new MappedPercolation(lattice, channel, header,
+                                                                  sitesNumber, !clean);
+            if (clean) {
+                percolation.openSites = header.getLong(OPEN_SITES_OFFSET);
+                percolation.percolates = header.get(PERCOLATES_OFFSET) != 0;
+            }
+            else {
+                percolation.rebuild();
+            }
+            return percolation;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // opens the site (row, col) if it is not open already
+    public void open(int row, int col) {
+        validate(row, col);
+        openIndex(getIndex(row, col));
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        validate(row, col);
+        return isOpenIndex(getIndex(row, col));
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        validate(row, col);
+        long currentIndex = getIndex(row, col);
+        return isOpenIndex(currentIndex) && (data.flags(data.find(currentIndex)) & TOP) != 0;
+    }
+
+    // returns the number of open sites
+    public long numberOfOpenSites() {
+        return openSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // writes the whole state through to the file and marks it clean
+    public void checkpoint() {
+        for (MappedByteBuffer mapping : openMappings) {
+            mapping.force();
+        }
+        data.force();
+        header.putLong(OPEN_SITES_OFFSET, openSites);
+        header.put(PERCOLATES_OFFSET, (byte) (percolates ? 1 : 0));
+        header.put(CLEAN_OFFSET, (byte) 1);
+        header.force();
+        dirty = false;
+    }
+
+    // checkpoints and closes the file
+    public void close() throws IOException {
+        checkpoint();
+        channel.close();
+    }
+
+    // opens the site with the 0-based flat index (row - 1) * layerSize + (col - 1),
+    // which is not validated; meant for drivers that generate the indexes themselves
+    void openIndex(long currentSite) {
+        if (isOpenIndex(currentSite)) {
+            return;
+        }
+
+        if (!dirty) {
+            dirty = true;
+            header.put(CLEAN_OFFSET, (byte) 0);
+            header.force();
+        }
+        long word = currentSite >>> 6;
+        MappedUnionFind.put(open, word, MappedUnionFind.get(open, word) | 1L << currentSite);
+        openSites++;
+
+        markSideLayers(currentSite);
+        connectOpenAdjacentSites(currentSite);
+    }
+
+    // is the site with the given 0-based flat index open? the index is not validated
+    boolean isOpenIndex(long site) {
+        return (MappedUnionFind.get(open, site >>> 6) & 1L << site) != 0;
+    }
+
+    // replays the open sites of the bitset on a freshly initialized union-find
+    private void rebuild() {
+        openSites = 0;
+        percolates = false;
+        for (long word = 0; word < openWords; word++) {
+            long bits = MappedUnionFind.get(open, word);
+            MappedUnionFind.put(open, word, 0);
+            while (bits != 0) {
+                openIndex(word << 6 | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        checkpoint();
+    }
+
+    private long getIndex(int row, int col) {
+        return (row - 1L) * layerSize + (col - 1);
+    }
+
+    private void connectOpenAdjacentSites(long currentSite) {
+        int count = lattice.neighbors(currentSite, neighbors);
+        for (int i = 0; i < count; i++) {
+            long adjacentSite = neighbors[i];
+            if (isOpenIndex(adjacentSite)) {
+                long currentRoot = data.find(currentSite);
+                long adjacentRoot = data.find(adjacentSite);
+                if (currentRoot != adjacentRoot) {
+                    updatePercolates(data.link(currentRoot, adjacentRoot));
+                }
+            }
+        }
+    }
+
+    // sites of the first and the last layer carry the flags the virtual top and
+    // bottom sites used to stand for
+    private void markSideLayers(long currentSite) {
+        int flags = 0;
+        if (currentSite < layerSize) {
+            flags |= TOP;
+        }
+        if (currentSite >= bottomLayerStart) {
+            flags |= BOTTOM;
+        }
+        if (flags != 0) {
+            long root = data.find(currentSite);
+            data.mark(root, flags);
+            updatePercolates(root);
+        }
+    }
+
+    private void updatePercolates(long root) {
+        if (data.flags(root) == (TOP | BOTTOM)) {
+            percolates = true;
+        }
+    }
+
+    private void validate(int row, int col) {
+        if (row < 1 || row > lattice.layers() || col < 1 || col > layerSize) {
+            throw new IllegalArgumentException(
+                    "row has to be between 1 and " + lattice.layers() + " and col between 1 and "
+                            + layerSize + " inclusively");
+        }
+    }
+
+    private static long getSitesNumber(Lattice lattice) {
+        if (lattice == null) {
+            throw new IllegalArgumentException("Lattice is null");
+        }
+        return (long) lattice.layers() * lattice.layerSize();
+    }
+}
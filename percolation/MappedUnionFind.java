@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// the union-find engine of PathHalvingUnionFind with its arrays in a memory-mapped
+// region of a file instead of on the heap: one state byte per element (rank and
+// flags), followed by one parent long per element. Elements are long indexes, so a
+// file is not bound to Integer.MAX_VALUE elements; a single mapping covers 1 GiB at
+// most, so the arrays are split into chunks
+public class MappedUnionFind {
+
+    private static final int RANK_MASK = 0x1f;
+    private static final int FLAGS_SHIFT = 5;
+    private static final int MAX_FLAGS = 0x7;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int LONG_CHUNK_SHIFT = CHUNK_SHIFT - 3;
+    private static final long LONG_CHUNK_MASK = (1L << LONG_CHUNK_SHIFT) - 1;
+
+    private final long size;
+    private final MappedByteBuffer[] state;
+    private final MappedByteBuffer[] parentChunks;
+    private final LongBuffer[] parent;
+
+    // maps size elements at offset of the channel; initialize turns them into
+    // singleton sets without flags, otherwise the sets in the file are taken over
+    public MappedUnionFind(FileChannel channel, long offset, long size, boolean initialize)
+            throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size has to be non-negative");
+        }
+
+        this.size = size;
+        state = map(channel, offset, size);
+        parentChunks = map(channel, offset + align(size), 8 * size);
+        parent = longBuffers(parentChunks);
+        if (initialize) {
+            for (long i = 0; i < size; i++) {
+                setParent(i, i);
+                setState(i, 0);
+            }
+        }
+    }
+
+    // number of bytes of the file the engine takes up for size elements
+    public static long bytesNeeded(long size) {
+        return align(size) + 8 * size;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // root of the set containing p
+    public long find(long p) {
+        long next = parent(p);
+        while (p != next) {
+            long grandparent = parent(next);
+            setParent(p, grandparent);
+            p = grandparent;
+            next = parent(p);
+        }
+        return p;
+    }
+
+    // merges the sets rooted at rootP and rootQ (which have to be different roots)
+    // and returns the root of the union; it carries the flags of both sets
+    public long link(long rootP, long rootQ) {
+        int stateP = state(rootP);
+        int stateQ = state(rootQ);
+        int rankP = stateP & RANK_MASK;
+        int rankQ = stateQ & RANK_MASK;
+        int flags = (stateP | stateQ) & ~RANK_MASK;
+        if (rankP < rankQ) {
+            setParent(rootP, rootQ);
+            setState(rootQ, flags | rankQ);
+            return rootQ;
+        }
+        setParent(rootQ, rootP);
+        setState(rootP, flags | (rankP == rankQ ? rankP + 1 : rankP));
+        return rootP;
+    }
+
+    // flags of the set rooted at root
+    public int flags(long root) {
+        return state(root) >>> FLAGS_SHIFT;
+    }
+
+    // adds flags to the set rooted at root
+    public void mark(long root, int flags) {
+        if (flags < 0 || flags > MAX_FLAGS) {
+            throw new IllegalArgumentException("flags have to be between 0 and " + MAX_FLAGS);
+        }
+        setState(root, state(root) | flags << FLAGS_SHIFT);
+    }
+
+    // writes all the changes through to the file
+    public void force() {
+        for (MappedByteBuffer chunk : state) {
+            chunk.force();
+        }
+        for (MappedByteBuffer chunk : parentChunks) {
+            chunk.force();
+        }
+    }
+
+    // word of an array of longs split into chunks by longBuffers
+    static long get(LongBuffer[] chunks, long index) {
+        return chunks[(int) (index >>> LONG_CHUNK_SHIFT)].get((int) (index & LONG_CHUNK_MASK));
+    }
+
+    static void put(LongBuffer[] chunks, long index, long value) {
+        chunks[(int) (index >>> LONG_CHUNK_SHIFT)].put((int) (index & LONG_CHUNK_MASK), value);
+    }
+
+    static LongBuffer[] longBuffers(MappedByteBuffer[] mappings) {
+        LongBuffer[] buffers = new LongBuffer[mappings.length];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = mappings[i].asLongBuffer();
+        }
+        return buffers;
+    }
+
+    // maps bytes of the channel at offset in chunks of 1 GiB at most
+    static MappedByteBuffer[] map(FileChannel channel, long offset, long bytes)
+            throws IOException {
+        int chunks = (int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] mappings = new MappedByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            long length = Math.min(1L << CHUNK_SHIFT, bytes - start);
+            mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset + start, length);
+        }
+        return mappings;
+    }
+
+    private long parent(long p) {
+        return get(parent, p);
+    }
+
+    private void setParent(long p, long value) {
+        put(parent, p, value);
+    }
+
+    private int state(long p) {
+        return state[(int) (p >>> CHUNK_SHIFT)].get((int) (p & CHUNK_MASK)) & 0xff;
+    }
+
+    private void setState(long p, int value) {
+        state[(int) (p >>> CHUNK_SHIFT)].put((int) (p & CHUNK_MASK), (byte) value);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,61 @@
+// union by rank with path halving over flat primitive arrays; the rank (at most 31)
+// and the flags of a root share one byte, so an element costs five bytes in total
+public class PathHalvingUnionFind implements UnionFind {
+
+    private static final int RANK_MASK = 0x1f;
+    private static final int FLAGS_SHIFT = 5;
+    private static final int MAX_FLAGS = 0x7;
+
+    private final int[] parent;
+    private final byte[] state;
+
+    // creates size singleton sets without flags
+    public PathHalvingUnionFind(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size has to be non-negative");
+        }
+
+        parent = new int[size];
+        state = new byte[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+    }
+
+    public int size() {
+        return parent.length;
+    }
+
+    public int find(int p) {
+        while (p != parent[p]) {
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+
+    public int link(int rootP, int rootQ) {
+        int rankP = state[rootP] & RANK_MASK;
+        int rankQ = state[rootQ] & RANK_MASK;
+        int flags = (state[rootP] | state[rootQ]) & ~RANK_MASK;
+        if (rankP < rankQ) {
+            parent[rootP] = rootQ;
+            state[rootQ] = (byte) (flags | rankQ);
+            return rootQ;
+        }
+        parent[rootQ] = rootP;
+        state[rootP] = (byte) (flags | (rankP == rankQ ? rankP + 1 : rankP));
+        return rootP;
+    }
+
+    public int flags(int root) {
+        return (state[root] & 0xff) >>> FLAGS_SHIFT;
+    }
+
+    public void mark(int root, int flags) {
+        if (flags < 0 || flags > MAX_FLAGS) {
+            throw new IllegalArgumentException("flags have to be between 0 and " + MAX_FLAGS);
+        }
+        state[root] |= (byte) (flags << FLAGS_SHIFT);
+    }
+}
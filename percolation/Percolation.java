@@ -1,74 +1,67 @@
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
-
 public class Percolation {
 
-    private final WeightedQuickUnionUF data;
-    private final int gridSize;
-    private final int topSiteIndex;
-    private final int bottomSiteIndex;
+    private static final int TOP = 1;
+    private static final int BOTTOM = 2;
+
+    private final UnionFind data;
+    private final Lattice lattice;
+    private final int layerSize;
+    private final int bottomLayerStart;
+    private final int[] neighbors;
+    private final long[] open;
     private int openSites;
-    private boolean[] open;
-    private int[] bottomlessParent;
-    private int[] bottomlessSize;
+    private boolean percolates;
 
     // creates n-by-n grid, with all sites initially blocked
     public Percolation(int n) {
-        if (n <= 0) {
-            throw new IllegalArgumentException("n has to be greater than 0");
+        this(new GridLattice(n, n, false));
+    }
+
+    // creates n-by-n grid on top of the given union-find engine over n * n elements
+    public Percolation(int n, UnionFind engine) {
+        this(new GridLattice(n, n, false), engine);
+    }
+
+    // creates the lattice, with all sites initially blocked
+    public Percolation(Lattice lattice) {
+        this(lattice, new PathHalvingUnionFind(getSitesNumber(lattice)));
+    }
+
+    // creates the lattice on top of the given union-find engine over all of its sites;
+    // (row, col) then stands for position col of layer row
+    public Percolation(Lattice lattice, UnionFind engine) {
+        int elementsNumber = getSitesNumber(lattice);
+        if (engine == null || engine.size() != elementsNumber) {
+            throw new IllegalArgumentException("engine has to hold exactly " + elementsNumber
+                                                       + " elements");
         }
 
-        gridSize = n;
-        int elementsNumber = n * n;
-        data = new WeightedQuickUnionUF(elementsNumber + 2);
-        topSiteIndex = elementsNumber;
-        bottomSiteIndex = elementsNumber + 1;
+        this.lattice = lattice;
+        data = engine;
+        layerSize = lattice.layerSize();
+        bottomLayerStart = elementsNumber - layerSize;
+        neighbors = new int[lattice.maxDegree()];
         openSites = 0;
-        open = new boolean[elementsNumber];
-        bottomlessParent = new int[elementsNumber + 1];
-        bottomlessSize = new int[elementsNumber + 1];
-        for (int i = 0; i <= elementsNumber; i++) {
-            bottomlessParent[i] = i;
-            bottomlessSize[i] = 1;
-        }
+        open = new long[(elementsNumber + 63) >>> 6];
     }
 
     // opens the site (row, col) if it is not open already
     public void open(int row, int col) {
         validate(row, col);
-        if (isOpen(row, col)) {
-            return;
-        }
-
-        if (gridSize == 1) {
-            open[0] = true;
-            openSites++;
-            connectSideRowsToVirtualSites(row, 0);
-            return;
-        }
-
-        int currentSite = getIndex(row, col);
-        open[currentSite] = true;
-        openSites++;
-
-        connectOpenAdjacentSites(currentSite, row, col);
-        connectSideRowsToVirtualSites(row, currentSite);
+        openIndex(getIndex(row, col));
     }
 
     // is the site (row, col) open?
     public boolean isOpen(int row, int col) {
         validate(row, col);
-        int index = getIndex(row, col);
-        return open[index];
+        return isOpenIndex(getIndex(row, col));
     }
 
     // is the site (row, col) full?
     public boolean isFull(int row, int col) {
         validate(row, col);
-        if (!isOpen(row, col)) {
-            return false;
-        }
         int currentIndex = getIndex(row, col);
-        return bottomlessConnected(currentIndex, topSiteIndex);
+        return isOpenIndex(currentIndex) && (data.flags(data.find(currentIndex)) & TOP) != 0;
     }
 
     // returns the number of open sites
@@ -78,97 +71,100 @@ public class Percolation {
 
     // does the system percolate?
     public boolean percolates() {
-        int topSiteRoot = data.find(topSiteIndex);
-        int bottomSiteRoot = data.find(bottomSiteIndex);
-        return topSiteRoot == bottomSiteRoot;
+        return percolates;
     }
 
-    private int getIndex(int row, int col) {
-        return (row - 1) * gridSize + (col - 1);
+    // opens the site with the 0-based flat index (row - 1) * layerSize + (col - 1),
+    // which is not validated; meant for drivers that generate the indexes themselves
+    void openIndex(int currentSite) {
+        if (isOpenIndex(currentSite)) {
+            return;
+        }
+
+        open[currentSite >>> 6] |= 1L << currentSite;
+        openSites++;
+
+        markSideLayers(currentSite);
+        connectOpenAdjacentSites(currentSite);
     }
 
-    private void connectOpenAdjacentSites(int currentSite, int row, int col) {
-        if (row + 1 <= gridSize) {
-            int adjacentSite = currentSite + gridSize;
-            connectSites(currentSite, adjacentSite);
-        }
-        if (row - 1 >= 1) {
-            int adjacentSite = currentSite - gridSize;
-            connectSites(currentSite, adjacentSite);
-        }
-        if (col + 1 <= gridSize) {
-            int adjacentSite = currentSite + 1;
-            connectSites(currentSite, adjacentSite);
-        }
-        if (col - 1 >= 1) {
-            int adjacentSite = currentSite - 1;
-            connectSites(currentSite, adjacentSite);
-        }
+    // is the site with the given 0-based flat index open? the index is not validated
+    boolean isOpenIndex(int site) {
+        return (open[site >>> 6] & 1L << site) != 0;
     }
 
-    private void connectSites(int currentSite, int adjacentSite) {
-        if (open[adjacentSite]) {
-            if (!areConnected(currentSite, adjacentSite)) {
-                data.union(currentSite, adjacentSite);
-            }
-            if (!bottomlessConnected(currentSite, adjacentSite)) {
-                bottomlessUnion(currentSite, adjacentSite);
-            }
-        }
+    // cluster the site belongs to, named by one of its sites; the site is not validated
+    int rootIndex(int site) {
+        return data.find(site);
     }
 
-    private void connectSideRowsToVirtualSites(int row, int currentSite) {
-        if (row == 1) {
-            if (!areConnected(currentSite, topSiteIndex)) {
-                data.union(currentSite, topSiteIndex);
-            }
-            if (!bottomlessConnected(currentSite, topSiteIndex)) {
-                bottomlessUnion(currentSite, topSiteIndex);
-            }
+    // number of sites of the lattice, which has to fit int indexes
+    static int getSitesNumber(Lattice lattice) {
+        if (lattice == null) {
+            throw new IllegalArgumentException("Lattice is null");
         }
-        if (row == gridSize && !areConnected(currentSite, bottomSiteIndex)) {
-            data.union(currentSite, bottomSiteIndex);
+        long sitesNumber = (long) lattice.layers() * lattice.layerSize();
+        if (sitesNumber > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("lattice has more than " + Integer.MAX_VALUE
+                                                       + " sites");
         }
+        return (int) sitesNumber;
     }
 
-    private boolean areConnected(int firstSite, int secondSite) {
-        return data.find(firstSite) == data.find(secondSite);
+    private int getIndex(int row, int col) {
+        return (row - 1) * layerSize + (col - 1);
     }
 
-    private void validate(int row, int col) {
-        if (row < 1 || row > gridSize || col < 1 || col > gridSize) {
-            throw new IllegalArgumentException(
-                    "row and col have to be between 1 and " + gridSize + " inclusively");
+    private void connectOpenAdjacentSites(int currentSite) {
+        int count = lattice.neighbors(currentSite, neighbors);
+        for (int i = 0; i < count; i++) {
+            connectSites(currentSite, neighbors[i]);
         }
     }
 
-    private boolean bottomlessConnected(int firstSite, int secondSite) {
-        return bottomlessFind(firstSite) == bottomlessFind(secondSite);
+    private void connectSites(int currentSite, int adjacentSite) {
+        if (isOpenIndex(adjacentSite)) {
+            int currentRoot = data.find(currentSite);
+            int adjacentRoot = data.find(adjacentSite);
+            if (currentRoot != adjacentRoot) {
+                updatePercolates(data.link(currentRoot, adjacentRoot));
+            }
+        }
     }
 
-    private void bottomlessUnion(int p, int q) {
-        int rootP = bottomlessFind(p);
-        int rootQ = bottomlessFind(q);
-        if (rootP == rootQ) return;
-
-        if (bottomlessSize[rootP] < bottomlessSize[rootQ]) {
-            bottomlessParent[rootP] = rootQ;
-            bottomlessSize[rootQ] += bottomlessSize[rootP];
+    // sites of the first and the last layer carry the flags the virtual top and
+    // bottom sites used to stand for
+    private void markSideLayers(int currentSite) {
+        int flags = 0;
+        if (currentSite < layerSize) {
+            flags |= TOP;
+        }
+        if (currentSite >= bottomLayerStart) {
+            flags |= BOTTOM;
         }
-        else {
-            bottomlessParent[rootQ] = rootP;
-            bottomlessSize[rootP] += bottomlessSize[rootQ];
+        if (flags != 0) {
+            int root = data.find(currentSite);
+            data.mark(root, flags);
+            updatePercolates(root);
         }
     }
 
-    private int bottomlessFind(int p) {
-        while (p != bottomlessParent[p])
-            p = bottomlessParent[p];
-        return p;
+    private void updatePercolates(int root) {
+        if (data.flags(root) == (TOP | BOTTOM)) {
+            percolates = true;
+        }
+    }
+
+    private void validate(int row, int col) {
+        if (row < 1 || row > lattice.layers() || col < 1 || col > layerSize) {
+            throw new IllegalArgumentException(
+                    "row has to be between 1 and " + lattice.layers() + " and col between 1 and "
+                            + layerSize + " inclusively");
+        }
     }
 
     // test client (optional)
     public static void main(String[] args) {
         // not needed
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+
+import java.util.SplittableRandom;
+
+// times Percolation against the former two-structure layout on identical opening orders
+public class PercolationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private final int n;
+    private final int[][] orders;
+
+    private PercolationBenchmark(int n, int trials, long seed) {
+        this.n = n;
+        orders = new int[trials][];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < trials; i++) {
+            orders[i] = shuffledSites(random);
+        }
+    }
+
+    private int[] shuffledSites(SplittableRandom random) {
+        int[] sites = new int[n * n];
+        for (int i = 0; i < sites.length; i++) {
+            int swap = random.nextInt(i + 1);
+            sites[i] = sites[swap];
+            sites[swap] = i;
+        }
+        return sites;
+    }
+
+    private long runFlagged() {
+        long opened = 0;
+        for (int[] order : orders) {
+            Percolation percolation = new Percolation(n);
+            for (int i = 0; !percolation.percolates(); i++) {
+                percolation.openIndex(order[i]);
+            }
+            opened += percolation.numberOfOpenSites();
+        }
+        return opened;
+    }
+
+    private long runTwoStructure() {
+        long opened = 0;
+        for (int[] order : orders) {
+            TwoStructurePercolation percolation = new TwoStructurePercolation(n);
+            for (int i = 0; !percolation.percolates(); i++) {
+                percolation.open(order[i]);
+            }
+            opened += percolation.openSites;
+        }
+        return opened;
+    }
+
+    private void report() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runFlagged();
+            runTwoStructure();
+        }
+
+        long start = System.nanoTime();
+        long flaggedOpened = runFlagged();
+        double flaggedMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        long twoStructureOpened = runTwoStructure();
+        double twoStructureMillis = (System.nanoTime() - start) / 1e6;
+        if (flaggedOpened != twoStructureOpened) {
+            throw new IllegalStateException("layouts disagree on the thresholds");
+        }
+
+        StdOut.printf("%-26s %10s %14s%n", "layout", "ms/trial", "bytes/site");
+        StdOut.printf("%-26s %10.3f %14.3f%n", "flagged path halving",
+                      flaggedMillis / orders.length, 4 + 1 + 1.0 / 8);
+        StdOut.printf("%-26s %10.3f %14.3f%n", "two weighted quick-union",
+                      twoStructureMillis / orders.length, 8 + 8 + 1.0);
+    }
+
+    // the layout Percolation had before: one union-find with virtual top and bottom
+    // sites for percolates() and a second one without the bottom site for isFull()
+    private static class TwoStructurePercolation {
+        private final int n;
+        private final int top;
+        private final int bottom;
+        private final WeightedQuickUnionUF data;
+        private final WeightedQuickUnionUF bottomless;
+        private final boolean[] open;
+        private int openSites;
+
+        private TwoStructurePercolation(int n) {
+            this.n = n;
+            top = n * n;
+            bottom = n * n + 1;
+            data = new WeightedQuickUnionUF(n * n + 2);
+            bottomless = new WeightedQuickUnionUF(n * n + 1);
+            open = new boolean[n * n];
+        }
+
+        private void open(int site) {
+            open[site] = true;
+            openSites++;
+            int row = site / n;
+            int col = site % n;
+            if (row == 0) {
+                union(site, top);
+            }
+            if (row == n - 1) {
+                data.union(site, bottom);
+            }
+            if (row + 1 < n) {
+                union(site, site + n);
+            }
+            if (row > 0) {
+                union(site, site - n);
+            }
+            if (col + 1 < n) {
+                union(site, site + 1);
+            }
+            if (col > 0) {
+                union(site, site - 1);
+            }
+        }
+
+        private void union(int site, int other) {
+            if (other < open.length && !open[other]) {
+                return;
+            }
+            if (data.find(site) != data.find(other)) {
+                data.union(site, other);
+            }
+            if (bottomless.find(site) != bottomless.find(other)) {
+                bottomless.union(site, other);
+            }
+        }
+
+        private boolean percolates() {
+            return data.find(top) == data.find(bottom);
+        }
+    }
+
+    // usage: java PercolationBenchmark n trials [seed]
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int trials = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        new PercolationBenchmark(n, trials, seed).report();
+    }
+}
@@ -1,85 +1,495 @@
 import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.StdRandom;
-import edu.princeton.cs.algs4.StdStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class PercolationStats {
 
-    private final int n;
-    private double[] results;
+    private static final int BLOCK_SIZE = 16;
+    private static final int MIN_PRECISION_TRIALS = 30;
+    private static final int SIZE_CLASSES = 32;
+
+    private final Lattice lattice;
+    private final int sitesNumber;
+    private final Model model;
+    // indexes of the lattice bonds for the bond model, null for the site model
+    private final int[] bonds;
+    // number of sites or bonds a trial opens from
+    private final int elementsNumber;
+    private final double[] sweep;
+    // number of open sites or bonds at each sweep probability
+    private final int[] sweepCounts;
+    private final int maxTrials;
+    private final int blocks;
+    private final double precision;
+    private final SiteOrder siteOrder;
+    private final SplittableRandom seedSource;
+    private final Results results;
+    private final Map<Integer, Results> finishedBlocks;
+    private int nextBlock;
+    private int mergedBlocks;
+    private boolean done;
 
     // perform independent trials on an n-by-n grid
     public PercolationStats(int n, int trials) {
-        if (n <= 0 || trials <= 0) {
-            throw new IllegalArgumentException("n and trials have to be greater than 0");
-        }
+        this(n, trials, new Options());
+    }
+
+    // perform independent trials on an n-by-n grid with the given options; with a
+    // precision set, trials is only the upper bound on the number of trials
+    public PercolationStats(int n, int trials, Options options) {
+        this(new GridLattice(n, n, false), trials, options);
+    }
 
-        this.n = n;
-        results = new double[trials];
-        for (int i = 0; i < trials; i++) {
-            Percolation percolation = new Percolation(n);
-            performTrial(i, percolation);
+    // perform independent trials on the lattice with the given options
+    public PercolationStats(Lattice lattice, int trials, Options options) {
+        if (trials <= 0) {
+            throw new IllegalArgumentException("trials have to be greater than 0");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("Options are null");
         }
 
+        this.lattice = lattice;
+        sitesNumber = Percolation.getSitesNumber(lattice);
+        model = options.model;
+        bonds = model == Model.BOND ? BondPercolation.bonds(lattice) : null;
+        elementsNumber = model == Model.BOND ? bonds.length : sitesNumber;
+        if (elementsNumber == 0) {
+            // the threshold of a trial is the fraction of bonds open, which is 0 / 0
+            throw new IllegalArgumentException("lattice has no bonds");
+        }
+        sweep = options.sweep.clone();
+        sweepCounts = new int[sweep.length];
+        for (int i = 0; i < sweep.length; i++) {
+            sweepCounts[i] = (int) Math.round(sweep[i] * elementsNumber);
+        }
+        maxTrials = trials;
+        blocks = (trials + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        precision = options.precision;
+        siteOrder = options.siteOrder;
+        seedSource = new SplittableRandom(options.seed);
+        results = new Results(sweep.length);
+        finishedBlocks = new HashMap<>();
+        runTrials(options.threads);
     }
 
     // sample mean of percolation threshold
     public double mean() {
-        return StdStats.mean(results);
+        return results.thresholds.mean();
     }
 
     // sample standard deviation of percolation threshold
     public double stddev() {
-        return StdStats.stddev(results);
+        return results.thresholds.stddev();
     }
 
     // low endpoint of 95% confidence interval
     public double confidenceLo() {
-        double mean = mean();
-        double stddev = stddev();
-        return mean - getConfidenceIntervalDifference(stddev, results.length);
+        return mean() - getConfidenceIntervalDifference();
     }
 
     // high endpoint of 95% confidence interval
     public double confidenceHi() {
-        double mean = mean();
-        double stddev = stddev();
-        return mean + getConfidenceIntervalDifference(stddev, results.length);
+        return mean() + getConfidenceIntervalDifference();
+    }
+
+    // number of trials the statistics are based on
+    public int trials() {
+        return (int) results.thresholds.count();
+    }
+
+    // the sweep probabilities in increasing order; empty without a sweep
+    public double[] sweepProbabilities() {
+        return sweep.clone();
+    }
+
+    // fraction of the trials that percolated with the i-th sweep probability of
+    // sites (or bonds) open
+    public double percolationProbability(int i) {
+        validateSweepPoint(i);
+        return (double) results.percolating[i] / trials();
+    }
+
+    // average number of clusters per trial with the i-th sweep probability of sites
+    // (or bonds) open, binned by size on a log2 scale rather than kept per exact
+    // size: element b counts clusters of 2^b to 2^(b+1) - 1 sites, so the 32
+    // elements cover every size an int lattice can have
+    public double[] clusterSizeDistribution(int i) {
+        validateSweepPoint(i);
+        double[] distribution = new double[SIZE_CLASSES];
+        for (int b = 0; b < SIZE_CLASSES; b++) {
+            distribution[b] = (double) results.clusters[i][b] / trials();
+        }
+        return distribution;
+    }
+
+    private void validateSweepPoint(int i) {
+        if (i < 0 || i >= sweep.length) {
+            throw new IllegalArgumentException("i has to be between 0 and " + (sweep.length - 1));
+        }
+    }
+
+    private double getConfidenceIntervalDifference() {
+        RunningStats thresholds = results.thresholds;
+        return 1.96 * thresholds.stddev() / Math.sqrt(thresholds.count());
+    }
+
+    private boolean isPreciseEnough() {
+        return precision > 0 && results.thresholds.count() >= MIN_PRECISION_TRIALS
+                && getConfidenceIntervalDifference() <= precision;
+    }
+
+    // trials run in blocks, and the blocks are merged strictly in their order, each
+    // one with its own split generator; so both the statistics and the point where a
+    // precision target stops the run depend on the seed only, never on the threads
+    private void finishBlock(int block, Results blockResults) {
+        synchronized (this) {
+            finishedBlocks.put(block, blockResults);
+            while (!done && finishedBlocks.containsKey(mergedBlocks)) {
+                results.merge(finishedBlocks.remove(mergedBlocks));
+                mergedBlocks++;
+                done = mergedBlocks == blocks || isPreciseEnough();
+            }
+            if (done) {
+                finishedBlocks.clear();
+            }
+        }
+    }
+
+    private void runTrials(int threads) {
+        if (threads == 1) {
+            new Worker().run();
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(new Worker()));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running trials", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Trial failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void openSite(Percolation percolation, SplittableRandom random) {
+        int site = random.nextInt(sitesNumber);
+        while (percolation.isOpenIndex(site)) {
+            site = random.nextInt(sitesNumber);
+        }
+        percolation.openIndex(site);
     }
 
-    private double getConfidenceIntervalDifference(double stddev, int trials) {
-        return 1.96 * stddev / Math.sqrt(trials);
+    private static long randomSeed() {
+        long high = StdRandom.uniform(Integer.MAX_VALUE);
+        return high << 31 | StdRandom.uniform(Integer.MAX_VALUE);
     }
 
-    private void performTrial(int trial, Percolation percolation) {
-        while (!percolation.percolates()) {
-            openSite(percolation);
+    // pulls blocks of trials off the shared counter until the run is done
+    private final class Worker implements Runnable {
+
+        private int block;
+        private SplittableRandom random;
+        private int[] order;
+        private int[] clusterSizes;
+        private Percolation sitePercolation;
+        private BondPercolation bondPercolation;
+
+        public void run() {
+            while (claim()) {
+                resetOrder();
+                Results blockResults = new Results(sweep.length);
+                int end = Math.min(maxTrials, (block + 1) * BLOCK_SIZE);
+                for (int trial = block * BLOCK_SIZE; trial < end; trial++) {
+                    performTrial(blockResults);
+                }
+                finishBlock(block, blockResults);
+            }
+        }
+
+        // a single opening order feeds both the threshold and every sweep point:
+        // the trial goes on past the threshold until the last sweep point is passed
+        private void performTrial(Results blockResults) {
+            if (model == Model.SITE) {
+                sitePercolation = new Percolation(lattice);
+            }
+            else {
+                bondPercolation = new BondPercolation(lattice);
+            }
+
+            int opened = 0;
+            int point = recordSweepPoints(0, opened, blockResults);
+            while (!percolates()) {
+                openNext(opened++);
+                point = recordSweepPoints(point, opened, blockResults);
+            }
+            blockResults.thresholds.add((double) opened / elementsNumber);
+            while (point < sweepCounts.length) {
+                openNext(opened++);
+                point = recordSweepPoints(point, opened, blockResults);
+            }
         }
-        savePercolationThreshold(trial, percolation);
+
+        private boolean percolates() {
+            return model == Model.SITE ? sitePercolation.percolates()
+                                       : bondPercolation.percolates();
+        }
+
+        // opens the next site or bond; the ones opened so far are order[0..opened)
+        private void openNext(int opened) {
+            if (model == Model.SITE && siteOrder == SiteOrder.REJECTION) {
+                openSite(sitePercolation, random);
+                return;
+            }
+
+            int element = nextShuffled(opened);
+            if (model == Model.SITE) {
+                sitePercolation.openIndex(element);
+            }
+            else {
+                bondPercolation.openBondIndex(bonds[element]);
+            }
+        }
+
+        // advances a Fisher-Yates shuffle of all the elements by one step, so it only
+        // goes as far as the trial needs; any permutation left over from the previous
+        // trial of the block is as good a starting point as the identity
+        private int nextShuffled(int opened) {
+            int[] elements = order();
+            int swap = opened + random.nextInt(elements.length - opened);
+            int element = elements[swap];
+            elements[swap] = elements[opened];
+            elements[opened] = element;
+            return element;
+        }
+
+        private int recordSweepPoints(int point, int opened, Results blockResults) {
+            while (point < sweepCounts.length && sweepCounts[point] == opened) {
+                if (percolates()) {
+                    blockResults.percolating[point]++;
+                }
+                recordClusters(blockResults.clusters[point]);
+                point++;
+            }
+            return point;
+        }
+
+        private void recordClusters(long[] clusters) {
+            int[] sizes = clusterSizes();
+            for (int site = 0; site < sitesNumber; site++) {
+                if (model == Model.BOND) {
+                    sizes[bondPercolation.rootIndex(site)]++;
+                }
+                else if (sitePercolation.isOpenIndex(site)) {
+                    sizes[sitePercolation.rootIndex(site)]++;
+                }
+            }
+            for (int site = 0; site < sitesNumber; site++) {
+                if (sizes[site] != 0) {
+                    clusters[31 - Integer.numberOfLeadingZeros(sizes[site])]++;
+                    sizes[site] = 0;
+                }
+            }
+        }
+
+        // permutation buffer, reused by every trial of this worker
+        private int[] order() {
+            if (order == null) {
+                order = new int[elementsNumber];
+                resetOrder();
+            }
+            return order;
+        }
+
+        // a block starts from the identity, so that its trials do not depend on
+        // the blocks the same worker ran before
+        private void resetOrder() {
+            if (order == null) {
+                return;
+            }
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
+
+        // cluster size counters by root, all zero between uses
+        private int[] clusterSizes() {
+            if (clusterSizes == null) {
+                clusterSizes = new int[sitesNumber];
+            }
+            return clusterSizes;
+        }
+
+        // block i always gets the i-th split generator, whichever worker claims it
+        private boolean claim() {
+            synchronized (PercolationStats.this) {
+                if (done || nextBlock == blocks) {
+                    return false;
+                }
+                block = nextBlock++;
+                random = seedSource.split();
+                return true;
+            }
+        }
+    }
+
+    // what a trial opens
+    public enum Model {
+        // sites, with the bonds between open neighbours always open
+        SITE,
+        // bonds between sites, with all the sites always open
+        BOND
+    }
+
+    // order in which a trial of the site model opens the blocked sites; bonds
+    // are always opened in shuffled order
+    public enum SiteOrder {
+        // draw random sites until a blocked one comes up
+        REJECTION,
+        // walk a random permutation of the sites, one draw per opened site
+        SHUFFLE
     }
 
-    private void openSite(Percolation percolation) {
-        int row = StdRandom.uniform(n) + 1;
-        int col = StdRandom.uniform(n) + 1;
-        while (percolation.isOpen(row, col)) {
-            row = StdRandom.uniform(n) + 1;
-            col = StdRandom.uniform(n) + 1;
+    // outcome of a number of trials; merging keeps the order of the blocks
+    private static final class Results {
+        private final RunningStats thresholds = new RunningStats();
+        // per sweep point: trials that percolated and clusters by size class
+        private final long[] percolating;
+        private final long[][] clusters;
+
+        private Results(int sweepPoints) {
+            percolating = new long[sweepPoints];
+            clusters = new long[sweepPoints][SIZE_CLASSES];
+        }
+
+        private void merge(Results that) {
+            thresholds.merge(that.thresholds);
+            for (int i = 0; i < percolating.length; i++) {
+                percolating[i] += that.percolating[i];
+                for (int b = 0; b < SIZE_CLASSES; b++) {
+                    clusters[i][b] += that.clusters[i][b];
+                }
+            }
         }
-        percolation.open(row, col);
     }
 
-    private void savePercolationThreshold(int trial, Percolation percolation) {
-        double threshold = (double) percolation.numberOfOpenSites() / (n * n);
-        results[trial] = threshold;
+    // settings of a Monte Carlo run
+    public static final class Options {
+
+        private int threads = 1;
+        private long seed = randomSeed();
+        private SiteOrder siteOrder = SiteOrder.REJECTION;
+        private double precision;
+        private Model model = Model.SITE;
+        private double[] sweep = new double[0];
+
+        // number of worker threads running the trials
+        public Options threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads have to be greater than 0");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        // seed of the per-trial random generators
+        public Options seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        // order in which each trial opens sites
+        public Options siteOrder(SiteOrder siteOrder) {
+            if (siteOrder == null) {
+                throw new IllegalArgumentException("Site order is null");
+            }
+            this.siteOrder = siteOrder;
+            return this;
+        }
+
+        // keeps running trials until the half-width of the 95% confidence interval
+        // drops to epsilon (checked from 30 trials on); 0 runs all the trials
+        public Options precision(double epsilon) {
+            if (!(epsilon >= 0)) {
+                throw new IllegalArgumentException("epsilon has to be non-negative");
+            }
+            precision = epsilon;
+            return this;
+        }
+
+        // whether trials open sites or bonds
+        public Options model(Model model) {
+            if (model == null) {
+                throw new IllegalArgumentException("Model is null");
+            }
+            this.model = model;
+            return this;
+        }
+
+        // probabilities p at which every trial also records whether the system
+        // percolates and the sizes of its clusters, once a fraction p of the sites
+        // (or bonds) is open
+        public Options sweep(double... probabilities) {
+            if (probabilities == null) {
+                throw new IllegalArgumentException("Probabilities are null");
+            }
+            for (double p : probabilities) {
+                if (!(p >= 0 && p <= 1)) {
+                    throw new IllegalArgumentException("probabilities have to be between 0 and 1");
+                }
+            }
+            sweep = probabilities.clone();
+            Arrays.sort(sweep);
+            return this;
+        }
     }
 
     // test client (see below)
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
         int trials = Integer.parseInt(args[1]);
-        PercolationStats stats = new PercolationStats(n, trials);
+        Options options = new Options();
+        if (args.length > 2) {
+            options.threads(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            options.seed(Long.parseLong(args[3]));
+        }
+        if (args.length > 4) {
+            options.siteOrder(SiteOrder.valueOf(args[4]));
+        }
+        if (args.length > 5) {
+            options.precision(Double.parseDouble(args[5]));
+        }
+        PercolationStats stats = new PercolationStats(n, trials, options);
         StdOut.printf("mean = %f%n", stats.mean());
         StdOut.printf("stddev = %f%n", stats.stddev());
         StdOut.printf("95%% confidence interval = [%f, %f]%n", stats.confidenceLo(),
                       stats.confidenceHi());
+        if (args.length > 5) {
+            StdOut.printf("trials = %d%n", stats.trials());
+        }
     }
-}
\ No newline at end of file
+}
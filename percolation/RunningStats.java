@@ -0,0 +1,48 @@
+// running mean and variance of a stream of values (Welford's algorithm); two
+// accumulators can be merged, so each thread can keep its own and combine them later
+public class RunningStats {
+
+    private long count;
+    private double mean;
+    private double squaredDeviations;
+
+    // adds a value to the stream
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (value - mean);
+    }
+
+    // adds all the values seen by that accumulator, as if they had been added here
+    public void merge(RunningStats that) {
+        if (that.count == 0) {
+            return;
+        }
+        long total = count + that.count;
+        double delta = that.mean - mean;
+        mean += delta * that.count / total;
+        squaredDeviations += that.squaredDeviations + delta * delta * count * that.count / total;
+        count = total;
+    }
+
+    // number of values seen
+    public long count() {
+        return count;
+    }
+
+    // sample mean; NaN if no values were seen
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // sample variance; NaN if fewer than two values were seen
+    public double var() {
+        return count < 2 ? Double.NaN : squaredDeviations / (count - 1);
+    }
+
+    // sample standard deviation; NaN if fewer than two values were seen
+    public double stddev() {
+        return Math.sqrt(var());
+    }
+}
@@ -0,0 +1,20 @@
+// disjoint sets over the elements 0..size()-1, where the root of every set
+// carries a few bit flags that survive unions
+public interface UnionFind {
+
+    // number of elements
+    int size();
+
+    // root of the set containing p
+    int find(int p);
+
+    // merges the sets rooted at rootP and rootQ (which have to be different roots)
+    // and returns the root of the union; it carries the flags of both sets
+    int link(int rootP, int rootQ);
+
+    // flags of the set rooted at root
+    int flags(int root);
+
+    // adds flags to the set rooted at root
+    void mark(int root, int flags);
+}